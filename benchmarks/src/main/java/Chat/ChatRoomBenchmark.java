@@ -0,0 +1,110 @@
+package Chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How fast messages are added to a ChatRoom that already holds a history
+ * of a given size. The room keeps exactly that many messages, so every
+ * append also evicts the oldest one.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatRoomBenchmark {
+
+    /**
+     * The number of distinct messages that are appended in turn
+     */
+    private static final int MESSAGES = 1024;
+
+    /**
+     * The number of messages in the room
+     */
+    @Param({"100", "10000", "1000000"})
+    public int historySize;
+
+    /**
+     * True to have a listener on the room, as a client does
+     */
+    @Param({"false", "true"})
+    public boolean listening;
+
+    /**
+     * The room
+     */
+    private ChatRoom chatRoom;
+
+    /**
+     * The messages that are appended
+     */
+    private UserMessage[] messages;
+
+    /**
+     * The number of messages appended so far
+     */
+    private int next;
+
+    /**
+     * Fill the room with its history
+     */
+    @Setup
+    public void setUp() {
+        Users user = new Users("alice");
+        this.messages = new UserMessage[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            this.messages[i] = new UserMessage(user, System.currentTimeMillis(), "message number " + i + "\n");
+        }
+
+        this.chatRoom = new ChatRoom(this.historySize, Long.MAX_VALUE);
+        for (int i = 0; i < this.historySize; i++) {
+            this.chatRoom.addMessage(this.messages[i % MESSAGES]);
+        }
+        if (this.listening) {
+            this.chatRoom.addListener(new ChatListener() {
+                @Override
+                public void messagesAdded(ChatRoom chatRoom, List<UserMessage> messages) {
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the index of the appended message
+     */
+    @Benchmark
+    public long addMessage() {
+        return this.chatRoom.addMessage(this.messages[this.next++ & (MESSAGES - 1)]);
+    }
+
+    /**
+     * Append a message and read back the messages since the last one, as
+     * a client showing the chat does
+     *
+     * @return the new messages
+     */
+    @Benchmark
+    public List<UserMessage> addAndReadNewest() {
+        long index = this.chatRoom.addMessage(this.messages[this.next++ & (MESSAGES - 1)]);
+        return this.chatRoom.getMessages(index, index + 1);
+    }
+}
@@ -0,0 +1,147 @@
+package Chat.Server;
+
+import Chat.UserMessage;
+import Chat.Users;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What it costs a room to send a message to a number of members: putting
+ * it in order on the room's worker, encoding it once and queueing it for
+ * every member. The members' connections take each request off their queue
+ * as soon as it arrives, as if their writers kept up.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    /**
+     * The number of messages sent before waiting for the last member to get them
+     */
+    private static final int BATCH = 100;
+
+    /**
+     * The number of members in the room
+     */
+    @Param({"1", "10", "100", "1000"})
+    public int subscribers;
+
+    /**
+     * Runs the room's tasks
+     */
+    private MessageSequencer<Runnable> worker;
+
+    /**
+     * The room
+     */
+    private Room room;
+
+    /**
+     * The connection of the member that is sent each message last
+     */
+    private DrainingConnection last;
+
+    /**
+     * The user sending the messages
+     */
+    private Users user;
+
+    /**
+     * Create the room and its members
+     *
+     * @throws IOException if a member can't be sent the room's history
+     */
+    @Setup
+    public void setUp() throws IOException {
+        this.worker = new MessageSequencer<>("bench-worker", MessageSequencer.DEFAULT_SIZE, Runnable::run);
+        this.room = new Room("bench", this.worker, null, null, new ServerMetrics(() -> 0));
+        this.user = new Users("alice");
+        for (int i = 0; i < this.subscribers; i++) {
+            this.last = new DrainingConnection();
+            this.room.join(new Session(i, "user" + i, this.last), -1L);
+        }
+    }
+
+    /**
+     * Stop the room's worker
+     */
+    @TearDown
+    public void tearDown() {
+        this.worker.stop();
+    }
+
+    /**
+     * Send a batch of messages and wait until every member has them
+     *
+     * @return the number of requests the last member has been sent
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long broadcast() {
+        long target = this.last.sent + BATCH;
+        for (int i = 0; i < BATCH; i++) {
+            this.room.send(new UserMessage(this.user, System.currentTimeMillis(), "Hello everyone!\n"));
+        }
+        while (this.last.sent < target) {
+            Thread.yield();
+        }
+        return this.last.sent;
+    }
+
+    /**
+     * A connection whose writer takes each request as soon as it is queued
+     */
+    private static final class DrainingConnection implements ClientConnection {
+
+        /**
+         * The queue requests wait in
+         */
+        private final OutboundQueue queue = new OutboundQueue(OutboundQueue.DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+
+        /**
+         * The number of requests sent. Only changed by the room's worker.
+         */
+        private volatile long sent;
+
+        @Override
+        public void send(EncodedRequest request) throws IOException {
+            // the frame is encoded by the first member and shared by the rest
+            request.frame();
+            this.queue.offer(request);
+            this.queue.poll();
+            this.sent++;
+        }
+
+        @Override
+        public OutboundQueue getOutboundQueue() {
+            return this.queue;
+        }
+
+        @Override
+        public void close() {
+            this.queue.close();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package Chat.Server;
+
+import Chat.ChatRoom;
+import Chat.HistoryPage;
+import Chat.HistoryRequest;
+import Chat.MessageRequest;
+import Chat.MessageRequest.RequestType;
+import Chat.Protocol.FrameCompressor;
+import Chat.Protocol.MessageDecoder;
+import Chat.Protocol.MessageEncoder;
+import Chat.UserMessage;
+import Chat.Users;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What it costs to write and read each type of request, both as a binary
+ * frame, plain and compressed, and as Java serialization for legacy clients.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestSerializationBenchmark {
+
+    /**
+     * The number of serialized requests read from one object stream
+     */
+    private static final int BATCH = 256;
+
+    /**
+     * The number of messages in a sample chat or history page
+     */
+    private static final int SAMPLE_MESSAGES = 50;
+
+    /**
+     * The type of request
+     */
+    @Param({"CHAT_ROOM", "SEND_MESSAGE", "ERROR", "LOGIN", "LOGIN_SUCCESS", "MESSAGE_SENT", "INVALID_USERNAME",
+            "USER_ALREADY_EXISTS", "HISTORY_PAGE", "REQUEST_HISTORY", "JOIN_ROOM", "LEAVE_ROOM"})
+    public RequestType type;
+
+    /**
+     * A request of the type
+     */
+    private MessageRequest<?> request;
+
+    /**
+     * Encodes the request
+     */
+    private MessageEncoder encoder;
+
+    /**
+     * Decodes the request
+     */
+    private MessageDecoder decoder;
+
+    /**
+     * The request as a binary frame
+     */
+    private byte[] frame;
+
+    /**
+     * Where the payload starts in the frame
+     */
+    private int payloadStart;
+
+    /**
+     * The binary frame compressed
+     */
+    private byte[] compressed;
+
+    /**
+     * Where the payload starts in the compressed frame
+     */
+    private int compressedStart;
+
+    /**
+     * An object stream of BATCH copies of the serialized request
+     */
+    private byte[] objectStream;
+
+    /**
+     * Build the request and its encoded forms
+     *
+     * @throws IOException if the request can't be encoded
+     */
+    @Setup
+    public void setUp() throws IOException {
+        this.request = sample(this.type);
+        this.encoder = new MessageEncoder();
+        this.decoder = new MessageDecoder();
+
+        ByteBuffer encoded = this.encoder.encode(this.request);
+        this.frame = encoded.array();
+        this.payloadStart = MessageDecoder.headerSize(MessageDecoder.peekFrameLength(encoded.duplicate()));
+        this.compressed = FrameCompressor.compress(this.frame);
+        this.compressedStart = MessageDecoder.headerSize(MessageDecoder.peekFrameLength(ByteBuffer.wrap(this.compressed)));
+
+        // the serialized requests have no stream header, so give the stream one in front of them
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new ObjectOutputStream(stream).flush();
+        byte[] serialized = SerializationBuffer.serialize(this.request);
+        for (int i = 0; i < BATCH; i++) {
+            stream.write(serialized, 0, serialized.length);
+        }
+        this.objectStream = stream.toByteArray();
+    }
+
+    /**
+     * @return the request as a binary frame
+     * @throws IOException if the request can't be encoded
+     */
+    @Benchmark
+    public ByteBuffer encode() throws IOException {
+        return this.encoder.encode(this.request);
+    }
+
+    /**
+     * @return the request read from its binary frame
+     * @throws IOException if the frame is malformed
+     */
+    @Benchmark
+    public MessageRequest<?> decode() throws IOException {
+        return this.decoder.decode(ByteBuffer.wrap(this.frame, this.payloadStart, this.frame.length - this.payloadStart));
+    }
+
+    /**
+     * @return the frame compressed, or the frame itself if compressing doesn't make it smaller
+     * @throws IOException if the frame can't be compressed
+     */
+    @Benchmark
+    public byte[] compress() throws IOException {
+        return FrameCompressor.compress(this.frame);
+    }
+
+    /**
+     * @return the request read back from the compressed frame
+     * @throws IOException if the frame can't be decoded
+     */
+    @Benchmark
+    public MessageRequest<?> decodeCompressed() throws IOException {
+        return this.decoder.decode(ByteBuffer.wrap(this.compressed, this.compressedStart,
+                this.compressed.length - this.compressedStart));
+    }
+
+    /**
+     * @return the request serialized for a legacy client
+     * @throws IOException if the request can't be serialized
+     */
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return SerializationBuffer.serialize(this.request);
+    }
+
+    /**
+     * Read the serialized requests from one object stream, as a legacy
+     * client reads them from its connection
+     *
+     * @return the last request read
+     * @throws IOException            if the stream is malformed
+     * @throws ClassNotFoundException if a class in the stream isn't known
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(this.objectStream));
+        Object request = null;
+        for (int i = 0; i < BATCH; i++) {
+            request = in.readObject();
+        }
+        return request;
+    }
+
+    /**
+     * Build a request like the ones the server and clients send
+     *
+     * @param type - the type of request
+     * @return the request
+     */
+    private static MessageRequest<?> sample(RequestType type) {
+        Users user = new Users("alice");
+        List<UserMessage> messages = new ArrayList<>();
+        for (int i = 0; i < SAMPLE_MESSAGES; i++) {
+            UserMessage message = new UserMessage(user, System.currentTimeMillis(), "Is everyone here for the meeting? " + i + "\n");
+            message.setRoom(ChatRoom.DEFAULT_ROOM);
+            message.setSequence(1000 + i);
+            messages.add(message);
+        }
+
+        switch (type) {
+            case CHAT_ROOM:
+                ChatRoom chatRoom = new ChatRoom();
+                messages.forEach(chatRoom::addMessage);
+                return new MessageRequest<>(type, chatRoom.renderText());
+            case SEND_MESSAGE:
+            case MESSAGE_SENT:
+                return new MessageRequest<>(type, messages.get(0));
+            case LOGIN:
+                user.setLastSeen(1000L);
+                return new MessageRequest<>(type, user);
+            case HISTORY_PAGE:
+                return new MessageRequest<>(type, new HistoryPage(ChatRoom.DEFAULT_ROOM, messages, 1000, 0, false));
+            case REQUEST_HISTORY:
+                return new MessageRequest<>(type, new HistoryRequest(ChatRoom.DEFAULT_ROOM, 1000));
+            case JOIN_ROOM:
+            case LEAVE_ROOM:
+                return new MessageRequest<>(type, "dev");
+            default:
+                return new MessageRequest<>(type, "The server has something to say.");
+        }
+    }
+}
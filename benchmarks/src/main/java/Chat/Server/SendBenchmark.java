@@ -0,0 +1,240 @@
+package Chat.Server;
+
+import Chat.ChatRoom;
+import Chat.MessageRequest;
+import Chat.Protocol.WriteBatching;
+import Chat.UserMessage;
+import Chat.Users;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How many messages a second the server takes in through
+ * enterMessageChanges, from one client thread and from several at once.
+ * The room workers' rings are bounded, so once they fill up the senders
+ * go only as fast as the workers add the messages to the rooms.
+ * <p>
+ * The baseline benchmarks run the same senders through a copy of the
+ * synchronized enterMessageChanges the server had before the rings, where
+ * every message waits its turn on the server's monitor.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendBenchmark {
+
+    /**
+     * The number of rooms the senders are spread over, each on a worker of its own
+     */
+    @Param({"1", "4"})
+    public int rooms;
+
+    /**
+     * The server
+     */
+    private ChatServer server;
+
+    /**
+     * The server's old way of taking in messages
+     */
+    private SynchronizedSends baseline;
+
+    /**
+     * Hands each sender the next room
+     */
+    private final AtomicInteger senders = new AtomicInteger();
+
+    /**
+     * Start a server with a worker for each room
+     */
+    @Setup
+    public void setUp() {
+        this.server = new ChatServer(OutboundQueue.DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST, this.rooms, null, 0,
+                null, WriteBatching.DEFAULT, new EventLog(EventLog.DEFAULT_SIZE, true, System.out));
+        this.baseline = new SynchronizedSends();
+    }
+
+    /**
+     * @param sender - the sending thread
+     */
+    @Benchmark
+    @Threads(1)
+    public void singleSender(Sender sender) {
+        this.server.enterMessageChanges(sender.next());
+    }
+
+    /**
+     * @param sender - the sending thread
+     */
+    @Benchmark
+    @Threads(4)
+    public void contendedSenders(Sender sender) {
+        this.server.enterMessageChanges(sender.next());
+    }
+
+    /**
+     * @param sender - the sending thread
+     * @throws IOException if the message could not be sent
+     */
+    @Benchmark
+    @Threads(1)
+    public void baselineSingleSender(Sender sender) throws IOException {
+        this.baseline.enterMessageChanges(sender.next());
+    }
+
+    /**
+     * @param sender - the sending thread
+     * @throws IOException if the message could not be sent
+     */
+    @Benchmark
+    @Threads(4)
+    public void baselineContendedSenders(Sender sender) throws IOException {
+        this.baseline.enterMessageChanges(sender.next());
+    }
+
+    /**
+     * A copy of the server's enterMessageChanges from before the rings, kept
+     * as it was apart from finding the message's room. However many rooms
+     * there are, every message goes through the one monitor.
+     */
+    static class SynchronizedSends {
+
+        /**
+         * Queue that will be used for incoming messages
+         */
+        private final ConcurrentLinkedQueue<MessageRequest> message_queue = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Flag to tell the message queue that it is ready to read
+         * the next message
+         */
+        private boolean messageReady = true;
+
+        /**
+         * The rooms, by name
+         */
+        private final Map<String, ChatRoom> chatRooms = new HashMap<>();
+
+        /**
+         * The users signed in, none in the benchmark, as with the server's
+         */
+        private final Map<String, ClientConnection> activeUsers = new HashMap<>();
+
+        /**
+         * Method that will send clients a MESSAGE_SENT request
+         *
+         * @param messageRequest the SEND_MESSAGE request from the Client thread, and the message itself.
+         * @throws IOException if the message could not be sent
+         */
+        synchronized void enterMessageChanges(MessageRequest messageRequest) throws IOException {
+
+            MessageRequest updateMessages = new MessageRequest<>(MessageRequest.RequestType.MESSAGE_SENT, messageRequest.getData());
+
+            // adding the updated messages to a queue
+            this.message_queue.add(updateMessages);
+
+            try {
+                // pausing the threads
+                while (!this.messageReady) {
+                    this.wait();
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+
+            // Updating the server-side chat
+            this.updateChatRoom(updateMessages);
+
+            // Telling the chat room on the client side to update
+            this.updateClientChat(new EncodedRequest(updateMessages));
+
+            this.message_queue.poll();
+            this.messageReady = true;
+        }
+
+        /**
+         * Updates the chat room
+         *
+         * @param messageRequest the MESSAGE_SENT request
+         */
+        private synchronized void updateChatRoom(MessageRequest messageRequest) {
+            this.messageReady = false;
+            UserMessage message = (UserMessage) messageRequest.getData();
+            this.chatRooms.computeIfAbsent(message.getRoom(), room -> new ChatRoom()).addMessage(message);
+        }
+
+        /**
+         * Sends the MESSAGE_SENT request to every user
+         *
+         * @param messageRequest the MESSAGE_SENT request
+         * @throws IOException if the request could not be sent
+         */
+        private void updateClientChat(EncodedRequest messageRequest) throws IOException {
+            for (String username : this.activeUsers.keySet()) {
+                this.activeUsers.get(username).send(messageRequest);
+            }
+        }
+    }
+
+    /**
+     * A thread sending messages to one of the rooms
+     */
+    @State(Scope.Thread)
+    public static class Sender {
+
+        /**
+         * The user sending the messages
+         */
+        private Users user;
+
+        /**
+         * The room the messages are sent to
+         */
+        private String room;
+
+        /**
+         * Pick the sender's room
+         *
+         * @param benchmark - the benchmark
+         */
+        @Setup
+        public void setUp(SendBenchmark benchmark) {
+            int index = benchmark.senders.getAndIncrement();
+            this.user = new Users("user" + index);
+            this.room = "room-" + index % benchmark.rooms;
+        }
+
+        /**
+         * @return a new SEND_MESSAGE request
+         */
+        MessageRequest<UserMessage> next() {
+            UserMessage message = new UserMessage(this.user, System.currentTimeMillis(), "Hello everyone!\n");
+            message.setRoom(this.room);
+            return new MessageRequest<>(MessageRequest.RequestType.SEND_MESSAGE, message);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package Chat;
+
+import java.util.List;
+
+/**
+ * Listens for changes to a ChatRoom.
+ * <p>
+ * Listeners are called on the thread that changed the chat, which for a
+ * client is the ServerConnection's network thread, so they must be quick.
+ * A listener that does slow work should be added with an Executor (see
+ * ChatRoom.addListener), so it is called on the Executor's threads instead.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public interface ChatListener {
+
+    /**
+     * Messages were added to the end of the chat
+     *
+     * @param chatRoom - the chat
+     * @param messages - the messages that were added, oldest first
+     */
+    void messagesAdded(ChatRoom chatRoom, List<UserMessage> messages);
+
+    /**
+     * The chat changed other than by adding messages to the end: it was
+     * replaced, older messages were added in front of it, or it was given
+     * text. Whatever is shown of the chat should be built again.
+     *
+     * @param chatRoom - the chat
+     */
+    default void chatChanged(ChatRoom chatRoom) {
+    }
+}
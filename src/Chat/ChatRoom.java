@@ -1,31 +1,109 @@
 package Chat;
 
-import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Observable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * The ChatRoom Object. Contains a String that will hold all of the
+ * The ChatRoom Object. Contains the log of all of the
  * messages sent from client-to-server-to-client.
+ * <p>
+ * Messages are stored as they were sent: structured entries with their
+ * sequence, user, raw timestamp and text. They are only rendered into
+ * text by the client showing the chat, or for a legacy client that can
+ * only read the chat as text.
+ * <p>
+ * ChatListeners are told exactly which messages were added, or that the
+ * chat changed some other way. The listeners are kept in a copy-on-write
+ * list, so telling them never takes a lock.
  *
  * @author Samuel Tregea
  * <p>
- * Last Date Modified: January 2, 2019
+ * Last Date Modified: October 18, 2026
  */
-public class ChatRoom extends Observable implements Serializable {
+public class ChatRoom implements Serializable {
+
+    /**
+     * The name of the room every user is in when they sign in
+     */
+    public static final String DEFAULT_ROOM = "main";
 
     /**
-     * String that contains the entire chat
+     * Pinned along with its MessageLog's, so a serialized chat can still be
+     * read after either class changes
      */
-    private String chat_messages;
+    private static final long serialVersionUID = 3799129311940705651L;
+
+    /**
+     * Text that was placed in the chat before any messages were added,
+     * such as a chat that was received from the server as a String.
+     */
+    private String history;
+
+    /**
+     * The log of messages in the chat
+     */
+    private final MessageLog log;
+
+    /**
+     * The sequence of the oldest message the server still has, or -1 if
+     * the server has not said
+     */
+    private long oldestOnServer;
+
+    /**
+     * The chat rendered as text, up to renderedTo
+     */
+    private transient StringBuilder rendered;
+
+    /**
+     * The index of the first message in rendered
+     */
+    private transient long renderedFrom;
+
+    /**
+     * The index after the last message in rendered
+     */
+    private transient long renderedTo;
+
+    /**
+     * The length of each message in rendered, as a ring that starts at
+     * lengthsStart with the message at renderedFrom
+     */
+    private transient int[] lengths;
+
+    /**
+     * Where the length of the message at renderedFrom is in lengths
+     */
+    private transient int lengthsStart;
+
+    /**
+     * rendered as a String, or null if it has changed since the last call
+     */
+    private transient String renderedText;
+
+    /**
+     * Renders the times of the messages, created the first time the chat is rendered
+     */
+    private transient TimestampFormatter timestamps;
+
+    /**
+     * The listeners told about changes to the chat
+     */
+    private transient CopyOnWriteArrayList<ChatListener> listeners;
 
     /**
      * Default constructor
      */
     public ChatRoom() {
-        this.chat_messages = "";
+        this("");
     }
 
     /**
@@ -34,44 +112,348 @@ public class ChatRoom extends Observable implements Serializable {
      * @param chat_messages the messages to be places in the chat
      */
     public ChatRoom(String chat_messages) {
-        this.chat_messages = chat_messages;
+        this.history = chat_messages == null ? "" : chat_messages;
+        this.log = new MessageLog();
+        this.oldestOnServer = -1;
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Create an empty ChatRoom that retains a limited amount of messages
+     *
+     * @param maxMessages - the maximum number of messages to keep
+     * @param maxBytes    - the maximum number of estimated bytes to keep
+     */
+    public ChatRoom(int maxMessages, long maxBytes) {
+        this.history = "";
+        this.log = new MessageLog(maxMessages, maxBytes);
+        this.oldestOnServer = -1;
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Tell a listener about every change to the chat, on the thread that
+     * made the change
+     *
+     * @param listener - the listener
+     */
+    public void addListener(ChatListener listener) {
+        this.listeners.add(listener);
     }
 
     /**
-     * Telling the ChatRoom that there was a new
-     * message that has been sent
+     * Tell a listener about every change to the chat, on an Executor's
+     * threads so a slow listener never holds up the thread that made the
+     * change. The listener is told about the changes one at a time, in
+     * order, whatever the Executor.
+     *
+     * @param listener - the listener
+     * @param executor - runs the listener
      */
-    public void messageSent() {
-        super.setChanged();
-        super.notifyObservers();
+    public void addListener(ChatListener listener, Executor executor) {
+        this.listeners.add(new AsyncListener(listener, executor));
     }
 
     /**
-     * Reformat and add a message to the String of the chat
+     * Stop telling a listener about changes to the chat
+     *
+     * @param listener - the listener, however it was added
+     */
+    public void removeListener(ChatListener listener) {
+        this.listeners.removeIf(added -> added == listener
+                || (added instanceof AsyncListener && ((AsyncListener) added).listener == listener));
+    }
+
+    /**
+     * Add a message to the end of the chat
      *
      * @param message - the message to be added
+     * @return the index given to the message
      */
-    public void addMessage(UserMessage message) {
-        String currentTime = new SimpleDateFormat("HH:mm:ss").format(message.getTime());
-        this.chat_messages += currentTime + " | " + message.getUsername() + ": " + message.getMessage();
+    public long addMessage(UserMessage message) {
+        long index = this.log.append(message);
+        fireMessagesAdded(Collections.singletonList(message));
+        return index;
     }
 
     /**
-     * Set the message
+     * Set the message, replacing everything in the chat
      *
      * @param message the message to be set
      */
     public void setMessage(String message) {
-        this.chat_messages = message;
+        synchronized (this) {
+            this.history = message == null ? "" : message;
+            this.log.clear();
+            this.oldestOnServer = -1;
+            this.rendered = null;
+        }
+        fireChatChanged();
+    }
+
+    /**
+     * Empty the chat, giving the next message added the given index
+     *
+     * @param nextIndex - the index of the next message
+     */
+    public void startAt(long nextIndex) {
+        synchronized (this) {
+            this.log.clear(nextIndex);
+            this.rendered = null;
+        }
+        fireChatChanged();
+    }
+
+    /**
+     * Add a page of messages from the server. A page that does not follow
+     * on from the chat replaces it, a page of older messages goes in front
+     * of it and any other page is added to the end, skipping messages the
+     * chat already has.
+     *
+     * @param page - the page
+     */
+    public void addHistory(HistoryPage page) {
+        List<UserMessage> added = new ArrayList<>();
+        boolean changed = page.isReplace();
+        synchronized (this) {
+            this.oldestOnServer = page.getOldest();
+            if (page.isReplace()) {
+                this.history = "";
+                this.log.clear();
+                this.rendered = null;
+            }
+
+            List<UserMessage> messages = page.getMessages();
+            long first = getFirstSequence();
+            if (first >= 0 && page.getNext() <= first) {
+                this.log.prepend(messages);
+                changed = true;
+            } else {
+                long last = getLastSequence();
+                for (UserMessage message : messages) {
+                    if (message.getSequence() > last) {
+                        this.log.append(message);
+                        added.add(message);
+                    }
+                }
+            }
+        }
+
+        if (changed) {
+            fireChatChanged();
+        } else if (!added.isEmpty()) {
+            fireMessagesAdded(Collections.unmodifiableList(added));
+        }
+    }
+
+    /**
+     * @return the sequence of the oldest message in the chat, or -1 if there is none
+     */
+    public long getFirstSequence() {
+        long first = this.log.getFirstIndex();
+        List<UserMessage> messages = this.log.getRange(first, first + 1);
+        return messages.isEmpty() ? -1 : messages.get(0).getSequence();
+    }
+
+    /**
+     * @return the sequence of the newest message in the chat, or -1 if there is none
+     */
+    public long getLastSequence() {
+        long next = this.log.getNextIndex();
+        List<UserMessage> messages = this.log.getRange(next - 1, next);
+        return messages.isEmpty() ? -1 : messages.get(0).getSequence();
+    }
+
+    /**
+     * @return true if the server has messages older than the oldest one in the chat
+     */
+    public boolean hasOlderHistory() {
+        long first = getFirstSequence();
+        return this.oldestOnServer >= 0 && first > this.oldestOnServer;
     }
 
     /**
-     * Retrieve the chat messages
+     * Retrieve the messages in the range [from, to) that are still retained
+     *
+     * @param from - the index of the first message
+     * @param to   - the index after the last message
+     * @return the messages, oldest first
+     */
+    public List<UserMessage> getMessages(long from, long to) {
+        return this.log.getRange(from, to);
+    }
+
+    /**
+     * @return the index of the oldest message still in the chat
+     */
+    public long getFirstIndex() {
+        return this.log.getFirstIndex();
+    }
+
+    /**
+     * @return the index the next message added to the chat will be given
+     */
+    public long getNextIndex() {
+        return this.log.getNextIndex();
+    }
+
+    /**
+     * Retrieve the chat messages. Only the messages added since the last call
+     * are formatted, and the text of messages evicted since then is cut from
+     * the front; the rest of the text is reused. The String itself is only
+     * made again when the chat has changed.
      *
      * @return the chat
      */
-    public String getMessages() {
-        return this.chat_messages;
+    public synchronized String getMessages() {
+        long first = this.log.getFirstIndex();
+        long next = this.log.getNextIndex();
+
+        // older messages were put in front, or everything rendered was evicted, so start over
+        if (this.rendered == null || first < this.renderedFrom || first > this.renderedTo) {
+            this.rendered = new StringBuilder(this.history);
+            this.renderedFrom = first;
+            this.renderedTo = first;
+            this.lengths = new int[64];
+            this.lengthsStart = 0;
+            this.renderedText = null;
+        }
+
+        if (first > this.renderedFrom) {
+            int evicted = 0;
+            for (long i = this.renderedFrom; i < first; i++) {
+                evicted += this.lengths[this.lengthsStart];
+                this.lengthsStart = (this.lengthsStart + 1) % this.lengths.length;
+            }
+            this.rendered.delete(this.history.length(), this.history.length() + evicted);
+            this.renderedFrom = first;
+            this.renderedText = null;
+        }
+
+        if (this.renderedTo < next) {
+            if (this.timestamps == null) {
+                this.timestamps = new TimestampFormatter();
+            }
+            List<UserMessage> added = this.log.getRange(this.renderedTo, next);
+            if (added.size() != next - this.renderedTo) {
+                // messages are added without the chat's lock, so some were evicted meanwhile
+                this.rendered = null;
+                return getMessages();
+            }
+            for (UserMessage message : added) {
+                int start = this.rendered.length();
+                render(this.rendered, this.timestamps, message);
+                addLength(this.rendered.length() - start);
+            }
+            this.renderedText = null;
+        }
+
+        if (this.renderedText == null) {
+            this.renderedText = this.rendered.toString();
+        }
+        return this.renderedText;
+    }
+
+    /**
+     * Note the length of the message rendered after the others, growing the ring if it is full
+     *
+     * @param length - the length of the message's text
+     */
+    private void addLength(int length) {
+        int count = (int) (this.renderedTo - this.renderedFrom);
+        if (count == this.lengths.length) {
+            int[] grown = new int[this.lengths.length * 2];
+            for (int i = 0; i < count; i++) {
+                grown[i] = this.lengths[(this.lengthsStart + i) % this.lengths.length];
+            }
+            this.lengths = grown;
+            this.lengthsStart = 0;
+        }
+        this.lengths[(this.lengthsStart + count) % this.lengths.length] = length;
+        this.renderedTo++;
+    }
+
+    /**
+     * Render the chat into text without keeping the text. Used by the
+     * server for clients that can only read the chat as text, so a server
+     * never holds a rendered copy of its rooms.
+     *
+     * @return the chat
+     */
+    public String renderText() {
+        List<UserMessage> messages = this.log.getAll();
+        String history;
+        synchronized (this) {
+            history = this.history;
+        }
+        StringBuilder text = new StringBuilder(history.length() + messages.size() * 48).append(history);
+        TimestampFormatter timestamps = new TimestampFormatter();
+        for (UserMessage message : messages) {
+            render(text, timestamps, message);
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the text that was placed in the chat before any messages were
+     * added, such as a chat received from the server as a String
+     */
+    public synchronized String getHistory() {
+        return this.history;
+    }
+
+    /**
+     * @return every message still in the chat, oldest first
+     */
+    public List<UserMessage> getEntries() {
+        return this.log.getAll();
+    }
+
+    /**
+     * Render a message as a line of the chat
+     *
+     * @param text       - the text the line is added to
+     * @param timestamps - renders the time of the message
+     * @param message    - the message
+     */
+    private static void render(StringBuilder text, TimestampFormatter timestamps, UserMessage message) {
+        timestamps.appendTo(text, message.getTime())
+                .append(" | ")
+                .append(message.getUsername())
+                .append(": ")
+                .append(message.getMessage());
+    }
+
+    /**
+     * Tell the listeners messages were added to the end of the chat
+     *
+     * @param messages - the messages, oldest first
+     */
+    private void fireMessagesAdded(List<UserMessage> messages) {
+        for (ChatListener listener : this.listeners) {
+            listener.messagesAdded(this, messages);
+        }
+    }
+
+    /**
+     * Tell the listeners the chat changed other than by adding messages to the end
+     */
+    private void fireChatChanged() {
+        for (ChatListener listener : this.listeners) {
+            listener.chatChanged(this);
+        }
+    }
+
+    /**
+     * Read the chat, starting with no listeners
+     *
+     * @param in - the stream
+     * @throws IOException            if the chat can't be read
+     * @throws ClassNotFoundException if a class in the chat isn't known
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.listeners = new CopyOnWriteArrayList<>();
     }
 
     /**
@@ -83,4 +465,81 @@ public class ChatRoom extends Observable implements Serializable {
     public String toString() {
         return getMessages();
     }
+
+    /**
+     * Hands the changes for a listener to an Executor. The changes wait in
+     * a queue, and only one task drains it at a time, so the listener is
+     * told about them in order.
+     */
+    private static final class AsyncListener implements ChatListener, Runnable {
+
+        /**
+         * The listener
+         */
+        private final ChatListener listener;
+
+        /**
+         * Runs the listener
+         */
+        private final Executor executor;
+
+        /**
+         * The changes the listener hasn't been told about yet
+         */
+        private final ConcurrentLinkedQueue<Runnable> changes;
+
+        /**
+         * Set while a task that drains the changes is waiting or running
+         */
+        private final AtomicBoolean scheduled;
+
+        /**
+         * @param listener - the listener
+         * @param executor - runs the listener
+         */
+        AsyncListener(ChatListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+            this.changes = new ConcurrentLinkedQueue<>();
+            this.scheduled = new AtomicBoolean();
+        }
+
+        @Override
+        public void messagesAdded(ChatRoom chatRoom, List<UserMessage> messages) {
+            queue(() -> this.listener.messagesAdded(chatRoom, messages));
+        }
+
+        @Override
+        public void chatChanged(ChatRoom chatRoom) {
+            queue(() -> this.listener.chatChanged(chatRoom));
+        }
+
+        /**
+         * Queue a change, and start a task to drain the queue if there isn't one
+         *
+         * @param change - tells the listener about the change
+         */
+        private void queue(Runnable change) {
+            this.changes.add(change);
+            if (this.scheduled.compareAndSet(false, true)) {
+                this.executor.execute(this);
+            }
+        }
+
+        /**
+         * Tell the listener about every queued change
+         */
+        @Override
+        public void run() {
+            Runnable change;
+            while ((change = this.changes.poll()) != null) {
+                change.run();
+            }
+            this.scheduled.set(false);
+            // a change may have been queued after the queue was seen empty
+            if (!this.changes.isEmpty() && this.scheduled.compareAndSet(false, true)) {
+                this.executor.execute(this);
+            }
+        }
+    }
 }
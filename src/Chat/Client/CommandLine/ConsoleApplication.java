@@ -1,22 +1,49 @@
 package Chat.Client.CommandLine;
 
+import Chat.ChatListener;
 import Chat.ChatRoom;
 import Chat.Client.Network.ServerConnection;
 import Chat.MessageRequest;
+import Chat.TimestampFormatter;
 import Chat.UserMessage;
 import Chat.Users;
 
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.*;
 
 /**
  * Application that allows for a user to communicate using commandline.
  * Mainly meant for the admins use, but any user can use it.
+ * <p>
+ * The whole conversation is printed when the chat is loaded or replaced;
+ * after that only the new messages are printed. Output goes through a
+ * large buffer that is flushed every so often, and before the user is
+ * prompted, so a busy room costs a write to the terminal per flush rather
+ * than per message.
+ * <p>
+ * With --follow the application only prints the room, without reading
+ * anything from the user, so the chat can be piped into other tools. It
+ * stops when the server closes the connection or the output is closed.
  *
  * @author Samuel Tregea
  * <p>
  * Last Date Modified: January 2, 2019
  */
-public class ConsoleApplication implements Observer {
+public class ConsoleApplication implements ChatListener {
+
+    /**
+     * The size of the output buffer, in chars
+     */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+
+    /**
+     * The default time between flushes of the output, in milliseconds
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL = 100;
 
     /**
      * Allows for the client to connect to the server
@@ -34,12 +61,63 @@ public class ConsoleApplication implements Observer {
      */
     private Users user;
 
+    /**
+     * Renders the times of new messages
+     */
+    private final TimestampFormatter timestamps = new TimestampFormatter();
+
+    /**
+     * The buffered output the chat is printed to
+     */
+    private final PrintWriter out;
+
+    /**
+     * The time between flushes of the output, in milliseconds
+     */
+    private final long flushInterval;
+
+    /**
+     * The sequence of the newest message that has been printed
+     */
+    private long printedTo;
+
     /**
      * Run the admin program
-     * @param args -  not used.
+     *
+     * @param args - [--follow] [--flush-interval milliseconds] [username [port [host]]]
      */
     public static void main(String[] args) {
-        ConsoleApplication c = new ConsoleApplication("ADMIN", 12345, "localhost");
+        boolean follow = false;
+        long flushInterval = DEFAULT_FLUSH_INTERVAL;
+        List<String> positional = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--follow":
+                    follow = true;
+                    break;
+                case "--flush-interval":
+                    flushInterval = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    if (args[i].startsWith("--") || positional.size() == 3) {
+                        System.err.println("Usage: ConsoleApplication [--follow] [--flush-interval milliseconds]"
+                                + " [username [port [host]]]");
+                        return;
+                    }
+                    positional.add(args[i]);
+                    break;
+            }
+        }
+
+        String username = positional.size() > 0 ? positional.get(0) : "ADMIN";
+        int port = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : 12345;
+        String host = positional.size() > 2 ? positional.get(2) : "localhost";
+        new ConsoleApplication(username, port, host, follow, flushInterval);
+        if (follow) {
+            // the connection's thread isn't a daemon, so leave without waiting for it
+            System.exit(0);
+        }
     }
 
     /**
@@ -52,13 +130,41 @@ public class ConsoleApplication implements Observer {
      * @param host   - the IP of the host / localhost
      */
     public ConsoleApplication(String username, int port, String host) {
+        this(username, port, host, false, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Constructor that will take in the user information, and then send it
+     * to the server. If the chat room exists, print it and either chat with
+     * the user or just follow the room, otherwise, do nothing.
+     *
+     * @param username      - the username
+     * @param port          - the port the server is on
+     * @param host          - the IP of the host / localhost
+     * @param follow        - true to only print the room, without reading from the user
+     * @param flushInterval - the time between flushes of the output, in milliseconds
+     */
+    public ConsoleApplication(String username, int port, String host, boolean follow, long flushInterval) {
+        this.out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), OUTPUT_BUFFER));
+        this.flushInterval = flushInterval;
         this.user = new Users(username);
         this.serverConnection = new ServerConnection(host, port, this.user);
         this.chat = serverConnection.getChatRoom();
 
         if (this.chat != null) {
-            this.chat.addObserver(this);
-            this.startChat();
+            synchronized (this) {
+                this.chat.addListener(this);
+                refresh();
+            }
+            if (follow) {
+                this.flush();
+            } else {
+                Thread flusher = new Thread(this::flush, "console-flusher");
+                flusher.setDaemon(true);
+                flusher.start();
+                this.startChat();
+            }
         }
         else {
             System.out.println("Could not connect to server.");
@@ -76,16 +182,60 @@ public class ConsoleApplication implements Observer {
     /**
      * Print out the conversation
      */
-    private void refresh() {
-        System.out.println(chat);
+    private synchronized void refresh() {
+        this.out.println(this.chat);
+        this.printedTo = this.chat.getLastSequence();
+    }
+
+    /**
+     * Flush the output every flushInterval until the connection or the
+     * output is closed
+     */
+    private void flush() {
+        try {
+            // checkError flushes the output first
+            while (this.serverConnection.isRunning() && !this.out.checkError()) {
+                Thread.sleep(this.flushInterval);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.out.flush();
     }
 
     /**
-     * updates the observable
+     * Print the messages that were added to the conversation
+     *
+     * @param chatRoom - the chat
+     * @param messages - the new messages
+     */
+    @Override
+    public synchronized void messagesAdded(ChatRoom chatRoom, List<UserMessage> messages) {
+        assert chatRoom == this.chat : "Update from non-model ChatRoom";
+
+        StringBuilder text = new StringBuilder();
+        for (UserMessage message : messages) {
+            // added while the conversation was first printed
+            if (message.getSequence() >= 0 && message.getSequence() <= this.printedTo) {
+                continue;
+            }
+            this.timestamps.appendTo(text, message.getTime())
+                    .append(" | ")
+                    .append(message.getUsername())
+                    .append(": ")
+                    .append(message.getMessage());
+        }
+        this.out.print(text);
+    }
+
+    /**
+     * Print the whole conversation again
+     *
+     * @param chatRoom - the chat
      */
     @Override
-    public void update(Observable o, Object t) {
-        assert o == this.chat : "Update from non-model Observable";
+    public void chatChanged(ChatRoom chatRoom) {
+        assert chatRoom == this.chat : "Update from non-model ChatRoom";
 
         refresh();
     }
@@ -96,7 +246,8 @@ public class ConsoleApplication implements Observer {
     private void startChat() {
         Scanner sc = new Scanner(System.in);
         while (serverConnection.isRunning()) {
-            System.out.println("Enter a message to the server:");
+            this.out.println("Enter a message to the server:");
+            this.out.flush();
 
             String clientMessage = sc.nextLine() + "\n";
 
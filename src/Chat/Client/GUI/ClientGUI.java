@@ -3,7 +3,8 @@ package Chat.Client.GUI;
 import Chat.*;
 import Chat.Client.Network.ServerConnection;
 import javafx.application.Application;
-import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
@@ -11,7 +12,8 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
-import javafx.scene.control.ScrollPane;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Alert.AlertType;
@@ -31,12 +33,20 @@ import java.util.*;
 /**
  * Class that users will interact with and allow users
  * to chat with other users.
+ * <p>
+ * The chat is shown in a ListView with a row for each message. Only the
+ * rows that are on screen have cells, which are recycled as the list
+ * scrolls, and a refresh only adds the messages that are new to the list,
+ * so a long-running room costs no more to update than a new one.
+ * <p>
+ * Changes to the chat are not applied as they arrive; a UiUpdateScheduler
+ * applies all of them once per frame.
  *
  * @author Samuel Tregea
  * <p>
- * Last Modified: January 9, 2019
+ * Last Modified: October, 2026
  */
-public class ClientGUI extends Application implements Observer {
+public class ClientGUI extends Application implements ChatListener {
 
     /**
      * The ChatRoom object containing the chat room messages
@@ -66,22 +76,42 @@ public class ClientGUI extends Application implements Observer {
     private boolean isMuted;
 
     /**
-     * Boolean that serves as a flag that will allow for the new message
-     * sound effect only to play when the chat room is updated by other
-     * users.
+     * Boolean that serves as a flag that is false until the chat room has
+     * been shown once, so that the new message sound effect doesn't play
+     * for the messages that are already there when logging in.
+     */
+    private boolean loaded;
+
+    /**
+     * Applies the changes to the chat room once per frame.
+     */
+    private UiUpdateScheduler updates;
+
+    /**
+     * The messages shown in the ListView, in the same order as the chat room.
+     */
+    private ObservableList<UserMessage> messages;
+
+    /**
+     * ListView that will display the chat room messages, one row per message.
      */
-    private boolean isMyMessage;
+    private ListView<UserMessage> messageList;
 
     /**
-     * Label that is places on a ScrollPane that will display the chat room
-     * messages.
+     * Label above the ListView that displays any text the chat room was
+     * given as a String, such as the chat sent by an older server.
      */
-    private Label chat_messages;
+    private Label history;
 
     /**
-     * ScrollPane that will display the Label "chat_messages".
+     * The index in the chat room of the first message in the list.
      */
-    private ScrollPane scrollPane;
+    private long shownFrom;
+
+    /**
+     * The index in the chat room after the last message in the list.
+     */
+    private long shownTo;
 
     /**
      * The current user.
@@ -170,10 +200,14 @@ public class ClientGUI extends Application implements Observer {
         this.host = "localhost";
         this.port = 12345;
         this.isMuted = false;
-        this.isMyMessage = true; // setting to true prevents a beep from logging in
-        this.chat_messages = new Label();
-        this.scrollPane = new ScrollPane();
-        scrollPane.setContent(chat_messages); // places the updated chat room on to the ScrollPane
+        this.loaded = false;
+        this.updates = new UiUpdateScheduler(this::refreshMessages);
+        this.messages = FXCollections.observableArrayList();
+        this.messageList = new ListView<>(this.messages);
+        this.messageList.setCellFactory(list -> new MessageCell(list));
+        this.messageList.setFocusTraversable(false);
+        this.history = new Label();
+        this.history.setWrapText(true);
     }
 
     /**
@@ -188,6 +222,7 @@ public class ClientGUI extends Application implements Observer {
         primaryStage.setScene(scene);
 
         primaryStage.setOnCloseRequest(e -> {
+            System.out.println("Chat updates: " + this.updates);
             System.exit(0);
         });
 
@@ -196,19 +231,19 @@ public class ClientGUI extends Application implements Observer {
     }
 
     /**
-     * Create the BorderPane that will hold the ScrollPane and GridPane.
+     * Create the BorderPane that will hold the ListView and GridPane.
      *
      * @return borderPane
      */
     private BorderPane chatRoomPane() {
         BorderPane borderPane = new BorderPane();
 
-        this.scrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.ALWAYS);
-        this.scrollPane.fitToHeightProperty();
-
-        borderPane.setCenter(this.scrollPane);
+        // the history label is only shown when the chat room has any
+        this.history.managedProperty().bind(this.history.visibleProperty());
+        VBox.setVgrow(this.messageList, Priority.ALWAYS);
+        borderPane.setCenter(new VBox(this.history, this.messageList));
 
-        GridPane gridPane = createBottomGrid(this.scrollPane);
+        GridPane gridPane = createBottomGrid();
 
         borderPane.setBottom(gridPane);
         return borderPane;
@@ -317,10 +352,9 @@ public class ClientGUI extends Application implements Observer {
      * Create and initialize the GridPane that will be
      * placed at the bottom of the BorderPane.
      *
-     * @param sc - The ScrollPane that will have its contents updated
      * @return a new grid
      */
-    private GridPane createBottomGrid(ScrollPane sc) {
+    private GridPane createBottomGrid() {
         GridPane grid = new GridPane();
         TextArea textArea = new TextArea();
         Button send = new Button();
@@ -345,7 +379,7 @@ public class ClientGUI extends Application implements Observer {
                     if (!isMuted) {
                         message_send_sound.play();
                     }
-                    handleMessage(textArea, sc, textArea);
+                    handleMessage(textArea, textArea);
                     break;
             }
         });
@@ -373,7 +407,7 @@ public class ClientGUI extends Application implements Observer {
             if (!this.isMuted) {
                 message_send_sound.play();
             }
-            handleMessage(textArea, sc, send);
+            handleMessage(textArea, send);
         });
 
         mic.setOnMouseEntered(e -> mic.setStyle("-fx-background-insets: 0"));
@@ -401,8 +435,9 @@ public class ClientGUI extends Application implements Observer {
      * for easier reading.
      *
      * @param textArea - the area in which the user enters a String
+     * @param node     - the node the message was sent with
      */
-    private void handleMessage(TextArea textArea, ScrollPane sc, Node node) {
+    private void handleMessage(TextArea textArea, Node node) {
 
         String divisor1, divisor2, newMessage;
 
@@ -424,11 +459,9 @@ public class ClientGUI extends Application implements Observer {
         // message object that is sent to server
         UserMessage message = new UserMessage(this.user, getCurrentTime(), newMessage); // creating a new message object every time a user enters a message
 
-        this.isMyMessage = true;
-
         this.sendMessage(message);
 
-        sc.setVvalue(1.0); // telling the ScrollPane to scroll down
+        scrollToBottom(); // telling the ListView to scroll down
 
         textArea.clear();
     }
@@ -467,10 +500,11 @@ public class ClientGUI extends Application implements Observer {
                 this.error_sound.play();
                 this.alert.showAndWait();
                 break;
-            // default: the login was successful, set an observer.
+            // default: the login was successful, listen to the chat.
             default:
-                this.chatRoom.addObserver(this);
+                this.chatRoom.addListener(this);
                 node.getScene().setRoot(chatRoomPane());
+                this.updates.start();
                 break;
         }
     }
@@ -531,36 +565,146 @@ public class ClientGUI extends Application implements Observer {
     }
 
     /**
-     * Update the chat room. Called when the Observable object (chatroom) calls
-     * notifyObservers() in ServerConnection.
+     * Messages were added to the chat room by the ServerConnection. They are
+     * shown with the others that arrive before the next frame.
+     *
+     * @param chatRoom - the chat room
+     * @param messages - the messages that were added
      */
     @Override
-    public void update(Observable o, Object arg) {
-        Platform.runLater(() -> {
-            refreshMessages();
-        });
+    public void messagesAdded(ChatRoom chatRoom, List<UserMessage> messages) {
+        this.updates.signal();
     }
 
     /**
-     * Subroutine that's called to update the ScrollPane and to
-     * update the Label that is containing the chat room's contents.
+     * The chat room was replaced or older history was added to it. The
+     * list is brought up to date before the next frame.
+     *
+     * @param chatRoom - the chat room
      */
-    private void refreshMessages() {
+    @Override
+    public void chatChanged(ChatRoom chatRoom) {
+        this.updates.signal();
+    }
 
-        // Updating the Label
-        this.chat_messages.setText(this.chatRoom.getMessages());
+    /**
+     * Subroutine that's called to bring the ListView up to date with the
+     * chat room. New messages are added to the end of the list, evicted
+     * messages are removed from the front and older history is added to
+     * the front, so the list only changes where the chat room did.
+     * <p>
+     * Called by the UiUpdateScheduler at most once a frame, with every
+     * message that arrived since; the new message sound plays at most once.
+     */
+    private void refreshMessages() {
+        long first = this.chatRoom.getFirstIndex();
+        long next = this.chatRoom.getNextIndex();
+        boolean added = false;
+        boolean fromOthers = false;
+
+        if (first > this.shownTo || next < this.shownTo || this.messages.size() != this.shownTo - this.shownFrom) {
+            // the chat was replaced, start over
+            this.messages.setAll(this.chatRoom.getMessages(first, next));
+            added = true;
+        } else {
+            if (first > this.shownFrom) {
+                // the oldest messages were evicted
+                this.messages.remove(0, (int) (first - this.shownFrom));
+            } else if (first < this.shownFrom) {
+                // older history was added in front
+                this.messages.addAll(0, this.chatRoom.getMessages(first, this.shownFrom));
+            }
+            if (next > this.shownTo) {
+                List<UserMessage> newMessages = this.chatRoom.getMessages(this.shownTo, next);
+                for (UserMessage message : newMessages) {
+                    fromOthers |= !this.user.getUsername().equals(message.getUsername());
+                }
+                this.messages.addAll(newMessages);
+                added = true;
+            }
+        }
+        this.shownFrom = first;
+        this.shownTo = first + this.messages.size();
+
+        // Updating the Label with any text the chat room was given as a String
+        String text = this.chatRoom.getHistory();
+        if (!text.equals(this.history.getText())) {
+            this.history.setText(text);
+            this.history.setVisible(!text.isEmpty());
+        }
 
-        // if the mute isn't toggled and the incoming message isn't the users message
-        if (!this.isMuted && !this.isMyMessage)
+        // if the mute isn't toggled and another user sent one of the new messages
+        if (!this.isMuted && this.loaded && fromOthers)
             this.new_message_sound.play();
 
-        // Re-updating the ScrollPanes contents
-        this.scrollPane.setContent(chat_messages);
+        // Allows for the new message sound to play only for messages that arrive after logging in
+        this.loaded = true;
+
+        // Updating the ListView to scroll down, unless older history was added
+        if (added) {
+            scrollToBottom();
+        }
+    }
+
+    /**
+     * Scroll the ListView to the newest message.
+     */
+    private void scrollToBottom() {
+        if (!this.messages.isEmpty()) {
+            this.messageList.scrollTo(this.messages.size() - 1);
+        }
+    }
 
-        // Allows for the new message sound to play only for clients who didn't send a message to update the chat
-        this.isMyMessage = false;
+    /**
+     * A row of the ListView. Cells are only created for the rows on screen
+     * and are given a different message as the list scrolls, so each one
+     * keeps its own builder and formatter to render with.
+     */
+    private static class MessageCell extends ListCell<UserMessage> {
+
+        /**
+         * The line of the chat being rendered
+         */
+        private final StringBuilder line = new StringBuilder(64);
+
+        /**
+         * Renders the times of the messages
+         */
+        private final TimestampFormatter timestamps = new TimestampFormatter();
+
+        /**
+         * Create a cell that wraps long messages to the width of the list
+         *
+         * @param list - the ListView the cell is in
+         */
+        MessageCell(ListView<UserMessage> list) {
+            setWrapText(true);
+            // leave room for the scroll bar
+            prefWidthProperty().bind(list.widthProperty().subtract(20));
+            setMaxWidth(Control.USE_PREF_SIZE);
+        }
+
+        @Override
+        protected void updateItem(UserMessage message, boolean empty) {
+            super.updateItem(message, empty);
+            if (empty || message == null) {
+                setText(null);
+                return;
+            }
 
-        // Updating the ScrollPane to scroll down
-        this.scrollPane.setVvalue(1.0);
+            this.line.setLength(0);
+            this.timestamps.appendTo(this.line, message.getTime())
+                    .append(" | ")
+                    .append(message.getUsername())
+                    .append(": ")
+                    .append(message.getMessage());
+            // messages end with a new line, which a row doesn't need
+            int end = this.line.length();
+            while (end > 0 && this.line.charAt(end - 1) == '\n') {
+                end--;
+            }
+            this.line.setLength(end);
+            setText(this.line.toString());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package Chat.Client.GUI;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces updates to the chat view into at most one per frame.
+ * <p>
+ * The network thread only signals that the chat changed, which marks the
+ * inbox without taking a lock or posting anything to the FX queue. On each
+ * pulse the FX thread drains the inbox and, if anything arrived, applies
+ * every change since the last pulse in one go, so a burst of messages costs
+ * one refresh and one layout pass.
+ * <p>
+ * Keeps count of how many signals were coalesced into each refresh, how
+ * long a change waited to be shown and how many frames were missed.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Modified: October, 2026
+ */
+class UiUpdateScheduler extends AnimationTimer {
+
+    /**
+     * The time between frames at 60 frames a second, in nanoseconds
+     */
+    private static final long FRAME = 1_000_000_000L / 60;
+
+    /**
+     * Applies the changes, on the FX thread
+     */
+    private final Runnable apply;
+
+    /**
+     * The System.nanoTime() of the oldest signal that hasn't been applied, 0 if there is none
+     */
+    private final AtomicLong pendingSince;
+
+    /**
+     * The number of signals that haven't been applied
+     */
+    private final AtomicLong pending;
+
+    /**
+     * The number of signals, all of which have been applied
+     */
+    private long signals;
+
+    /**
+     * The number of refreshes
+     */
+    private long batches;
+
+    /**
+     * The number of frames that were missed because a pulse came late
+     */
+    private long droppedFrames;
+
+    /**
+     * The longest a signal waited to be applied, in nanoseconds
+     */
+    private long maxLatency;
+
+    /**
+     * The total time signals waited to be applied, counting each batch once, in nanoseconds
+     */
+    private long totalLatency;
+
+    /**
+     * The time of the last pulse, 0 before the first
+     */
+    private long lastPulse;
+
+    /**
+     * Create the scheduler. Nothing is applied until it is started.
+     *
+     * @param apply - applies the changes, on the FX thread
+     */
+    UiUpdateScheduler(Runnable apply) {
+        this.apply = apply;
+        this.pendingSince = new AtomicLong();
+        this.pending = new AtomicLong();
+    }
+
+    /**
+     * Tell the scheduler the chat changed. May be called from any thread.
+     */
+    void signal() {
+        this.pending.incrementAndGet();
+        if (this.pendingSince.get() == 0) {
+            // only the first signal since the last pulse sets the time
+            this.pendingSince.compareAndSet(0, System.nanoTime());
+        }
+    }
+
+    /**
+     * Apply every change signalled since the last pulse. Called by the FX
+     * thread once per frame.
+     *
+     * @param now - the time of the pulse, in nanoseconds
+     */
+    @Override
+    public void handle(long now) {
+        if (this.lastPulse != 0 && now - this.lastPulse > FRAME + FRAME / 2) {
+            this.droppedFrames += (now - this.lastPulse) / FRAME - 1;
+        }
+        this.lastPulse = now;
+
+        long since = this.pendingSince.getAndSet(0);
+        if (since == 0) {
+            return;
+        }
+        this.signals += this.pending.getAndSet(0);
+        this.apply.run();
+
+        long latency = System.nanoTime() - since;
+        this.batches++;
+        this.totalLatency += latency;
+        this.maxLatency = Math.max(this.maxLatency, latency);
+    }
+
+    /**
+     * @return the number of frames that were missed because a pulse came late
+     */
+    long getDroppedFrames() {
+        return this.droppedFrames;
+    }
+
+    /**
+     * @return the average number of signals applied in each refresh
+     */
+    double getSignalsPerBatch() {
+        return this.batches == 0 ? 0 : (double) this.signals / this.batches;
+    }
+
+    /**
+     * @return the longest a change waited to be shown, in milliseconds
+     */
+    double getMaxLatency() {
+        return this.maxLatency / 1e6;
+    }
+
+    /**
+     * @return the average time the oldest change of a batch waited to be shown, in milliseconds
+     */
+    double getAverageLatency() {
+        return this.batches == 0 ? 0 : this.totalLatency / 1e6 / this.batches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("signals=%d batches=%d signals/batch=%.2f latency avg=%.2fms max=%.2fms droppedFrames=%d",
+                this.signals, this.batches, getSignalsPerBatch(), getAverageLatency(), getMaxLatency(),
+                this.droppedFrames);
+    }
+}
@@ -0,0 +1,509 @@
+package Chat.Client.LoadTest;
+
+import Chat.ChatListener;
+import Chat.ChatRoom;
+import Chat.Client.Network.ServerConnection;
+import Chat.LatencyHistogram;
+import Chat.MessageRequest;
+import Chat.Protocol.WriteBatching;
+import Chat.Server.SessionExecutors;
+import Chat.UserMessage;
+import Chat.Users;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A headless client that simulates a swarm of users, to find out how many
+ * users and messages a server can take.
+ * <p>
+ * Every simulated user opens a ServerConnection of its own, signs in with
+ * a generated username and sends messages at its share of the target
+ * rate. The connections' readers and writers and the users themselves run
+ * on virtual threads where the runtime has them, so thousands of users
+ * only need a handful of platform threads.
+ * <p>
+ * Each message carries the time it was meant to be sent. When the server
+ * sends it back in a MESSAGE_SENT, the time since then is recorded in a
+ * LatencyHistogram. Timing from when a message was meant to be sent,
+ * rather than when it actually was, keeps a stalled sender from hiding the
+ * messages it should have sent in the meantime.
+ * <p>
+ * With a rate of 0 the users only sign in and stay connected, as a soak
+ * test of how many idle clients a server can hold. Run the server with a
+ * fixed heap, such as -Xmx512m, and --metrics-port to watch its heap and
+ * threads while the users connect; every report also checks that none of
+ * them have been disconnected.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Modified: October, 2026
+ */
+public class LoadGenerator {
+
+    /**
+     * The default number of simulated users
+     */
+    public static final int DEFAULT_USERS = 100;
+
+    /**
+     * The default number of messages sent a second, by all of the users together
+     */
+    public static final double DEFAULT_RATE = 500;
+
+    /**
+     * The default length of the test once every user is connected, in seconds
+     */
+    public static final int DEFAULT_DURATION = 30;
+
+    /**
+     * The default time over which the users connect, in seconds
+     */
+    public static final int DEFAULT_RAMP = 5;
+
+    /**
+     * The default time between progress reports, in seconds
+     */
+    public static final int DEFAULT_REPORT_INTERVAL = 5;
+
+    /**
+     * The default message sizes
+     */
+    public static final String DEFAULT_SIZES = "uniform:20-200";
+
+    /**
+     * The time the users' last messages are given to arrive, in nanoseconds
+     */
+    private static final long DRAIN = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * The host of the server
+     */
+    private final String host;
+
+    /**
+     * The port of the server
+     */
+    private final int port;
+
+    /**
+     * The number of simulated users
+     */
+    private final int users;
+
+    /**
+     * The time between two messages from the same user, in nanoseconds
+     */
+    private final long sendInterval;
+
+    /**
+     * The time over which the users connect, in nanoseconds
+     */
+    private final long ramp;
+
+    /**
+     * The length of the test once every user is connected, in nanoseconds
+     */
+    private final long duration;
+
+    /**
+     * The time between progress reports, in nanoseconds
+     */
+    private final long reportInterval;
+
+    /**
+     * How long the messages are
+     */
+    private final MessageSizes sizes;
+
+    /**
+     * The number of rooms the users are spread over, 0 to keep them all in the default room
+     */
+    private final int rooms;
+
+    /**
+     * Runs the users and their connections
+     */
+    private final ExecutorService threads;
+
+    /**
+     * Makes the usernames of this run different from those of earlier runs
+     */
+    private final String runId;
+
+    /**
+     * The text the messages are cut from
+     */
+    private final String filler;
+
+    /**
+     * The time from when each message was meant to be sent until its sender got it back
+     */
+    private final LatencyHistogram latency;
+
+    /**
+     * The number of users that signed in
+     */
+    private final LongAdder connected;
+
+    /**
+     * The number of users that couldn't connect to the server
+     */
+    private final LongAdder connectFailures;
+
+    /**
+     * The number of users the server wouldn't sign in
+     */
+    private final LongAdder loginFailures;
+
+    /**
+     * The number of users that lost their connection during the test
+     */
+    private final LongAdder disconnects;
+
+    /**
+     * The number of messages sent
+     */
+    private final LongAdder sent;
+
+    /**
+     * The number of messages their senders got back
+     */
+    private final LongAdder delivered;
+
+    /**
+     * The number of messages the users got, from anyone
+     */
+    private final LongAdder received;
+
+    /**
+     * The number of times a user's chat was replaced, because the server
+     * fell behind or sent a whole page of a room's history
+     */
+    private final LongAdder reloads;
+
+    /**
+     * Run the load test
+     *
+     * @param args - [--host host] [--port port] [--users count] [--rate messages/second]
+     *             [--duration seconds] [--ramp seconds] [--size distribution] [--rooms count]
+     *             [--report seconds]
+     */
+    public static void main(String[] args) {
+        String host = "localhost";
+        int port = 12345;
+        int users = DEFAULT_USERS;
+        double rate = DEFAULT_RATE;
+        int duration = DEFAULT_DURATION;
+        int ramp = DEFAULT_RAMP;
+        String sizes = DEFAULT_SIZES;
+        int rooms = 0;
+        int report = DEFAULT_REPORT_INTERVAL;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--host":
+                        host = args[++i];
+                        break;
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--users":
+                        users = Integer.parseInt(args[++i]);
+                        break;
+                    case "--rate":
+                        rate = Double.parseDouble(args[++i]);
+                        break;
+                    case "--duration":
+                        duration = Integer.parseInt(args[++i]);
+                        break;
+                    case "--ramp":
+                        ramp = Integer.parseInt(args[++i]);
+                        break;
+                    case "--size":
+                        sizes = args[++i];
+                        break;
+                    case "--rooms":
+                        rooms = Integer.parseInt(args[++i]);
+                        break;
+                    case "--report":
+                        report = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (users < 1 || rate < 0 || duration < 1 || ramp < 0 || rooms < 0 || report < 1) {
+                throw new IllegalArgumentException("Counts, rates and times must be positive.");
+            }
+            new LoadGenerator(host, port, users, rate, duration, ramp, MessageSizes.parse(sizes), rooms, report).run();
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadGenerator [--host host] [--port port] [--users count]"
+                    + " [--rate messages/second] [--duration seconds] [--ramp seconds]"
+                    + " [--size fixed:N | uniform:MIN-MAX | exponential:MEAN] [--rooms count] [--report seconds]");
+            System.exit(1);
+        }
+        // the connections' threads don't stop on their own
+        System.exit(0);
+    }
+
+    /**
+     * Set up the load test
+     *
+     * @param host     - the host of the server
+     * @param port     - the port of the server
+     * @param users    - the number of simulated users
+     * @param rate     - the number of messages sent a second, by all of the users together, 0 for idle users
+     * @param duration - the length of the test once every user is connected, in seconds
+     * @param ramp     - the time over which the users connect, in seconds
+     * @param sizes    - how long the messages are
+     * @param rooms    - the number of rooms the users are spread over, 0 to keep them all in the default room
+     * @param report   - the time between progress reports, in seconds
+     */
+    public LoadGenerator(String host, int port, int users, double rate, int duration, int ramp,
+                         MessageSizes sizes, int rooms, int report) {
+        this.host = host;
+        this.port = port;
+        this.users = users;
+        // an idle user never sends
+        this.sendInterval = rate == 0 ? Long.MAX_VALUE : (long) (TimeUnit.SECONDS.toNanos(1) * users / rate);
+        this.ramp = TimeUnit.SECONDS.toNanos(ramp);
+        this.duration = TimeUnit.SECONDS.toNanos(duration);
+        this.reportInterval = TimeUnit.SECONDS.toNanos(report);
+        this.sizes = sizes;
+        this.rooms = rooms;
+        this.threads = SessionExecutors.virtualThreadPerTask();
+        this.runId = Long.toString(System.currentTimeMillis() % 1_000_000, 36);
+        this.latency = new LatencyHistogram();
+        this.connected = new LongAdder();
+        this.connectFailures = new LongAdder();
+        this.loginFailures = new LongAdder();
+        this.disconnects = new LongAdder();
+        this.sent = new LongAdder();
+        this.delivered = new LongAdder();
+        this.received = new LongAdder();
+        this.reloads = new LongAdder();
+
+        StringBuilder filler = new StringBuilder(MessageSizes.MAX_SIZE);
+        while (filler.length() < MessageSizes.MAX_SIZE) {
+            filler.append("the quick brown fox jumps over the lazy dog ");
+        }
+        this.filler = filler.substring(0, MessageSizes.MAX_SIZE);
+    }
+
+    /**
+     * Connect the users, have them send messages for the length of the
+     * test and print how it went
+     */
+    public void run() {
+        if (isIdle()) {
+            System.out.printf("Simulating %d idle users connected to %s:%d%n", this.users, this.host, this.port);
+        } else {
+            System.out.printf("Simulating %d users sending %.1f messages/s in total (%s chars) to %s:%d%n",
+                    this.users, TimeUnit.SECONDS.toNanos(1) * (double) this.users / this.sendInterval, this.sizes,
+                    this.host, this.port);
+        }
+
+        long start = System.nanoTime();
+        long end = start + this.ramp + this.duration;
+        for (int i = 0; i < this.users; i++) {
+            int index = i;
+            long connectAt = start + this.ramp * i / this.users;
+            this.threads.execute(() -> simulate(index, connectAt, end));
+        }
+
+        long lastReport = start;
+        long lastSent = 0;
+        long lastDelivered = 0;
+        long lastReceived = 0;
+        for (long next = start + this.reportInterval; next < end + DRAIN; next += this.reportInterval) {
+            parkUntil(next);
+            long now = System.nanoTime();
+            double seconds = (now - lastReport) / 1e9;
+            long sent = this.sent.sum();
+            long delivered = this.delivered.sum();
+            long received = this.received.sum();
+            System.out.printf("[%4ds] users=%d sent/s=%.0f delivered/s=%.0f received/s=%.0f p99=%.3fms errors=%d disconnects=%d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(now - start), this.connected.sum(),
+                    (sent - lastSent) / seconds, (delivered - lastDelivered) / seconds,
+                    (received - lastReceived) / seconds, this.latency.getValueAtPercentile(99) / 1e6,
+                    this.connectFailures.sum() + this.loginFailures.sum(), this.disconnects.sum());
+            lastReport = now;
+            lastSent = sent;
+            lastDelivered = delivered;
+            lastReceived = received;
+        }
+        parkUntil(end + DRAIN);
+        printSummary((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Simulate one user: connect, sign in and send messages until the end of the test
+     *
+     * @param index     - the number of the user
+     * @param connectAt - when the user connects, as a System.nanoTime()
+     * @param end       - when the user stops sending, as a System.nanoTime()
+     */
+    private void simulate(int index, long connectAt, long end) {
+        parkUntil(connectAt);
+        String username = "load-" + this.runId + "-" + index;
+        Users user = new Users(username);
+        ServerConnection connection = new ServerConnection(this.host, this.port, user, null,
+                WriteBatching.DEFAULT, this.threads);
+        if (!connection.isRunning()) {
+            this.connectFailures.increment();
+            return;
+        }
+        if (connection.getChatRoom(ChatRoom.DEFAULT_ROOM) == null) {
+            this.loginFailures.increment();
+            return;
+        }
+
+        String room = this.rooms == 0 ? ChatRoom.DEFAULT_ROOM : "load-" + index % this.rooms;
+        ChatRoom chat = this.rooms == 0 ? connection.getChatRoom() : connection.joinRoom(room);
+        chat.addListener(new Receiver(username));
+        this.connected.increment();
+
+        if (isIdle()) {
+            idle(connection, end);
+            return;
+        }
+
+        Random random = ThreadLocalRandom.current();
+        // spread the users' messages over the interval rather than sending them together
+        long next = System.nanoTime() + (long) (random.nextDouble() * this.sendInterval);
+        while (next < end) {
+            parkUntil(next);
+            if (!connection.isRunning()) {
+                this.disconnects.increment();
+                return;
+            }
+            UserMessage message = new UserMessage(user, System.currentTimeMillis(), text(next, random));
+            message.setRoom(room);
+            connection.sendMessage(new MessageRequest<>(MessageRequest.RequestType.SEND_MESSAGE, message));
+            this.sent.increment();
+            next += this.sendInterval;
+        }
+    }
+
+    /**
+     * @return true if the users only sign in and stay connected
+     */
+    private boolean isIdle() {
+        return this.sendInterval == Long.MAX_VALUE;
+    }
+
+    /**
+     * Keep an idle user connected until the end of the test, checking on
+     * the connection at every report
+     *
+     * @param connection - the user's connection
+     * @param end        - when the test ends, as a System.nanoTime()
+     */
+    private void idle(ServerConnection connection, long end) {
+        long next = System.nanoTime();
+        while (next < end) {
+            next = Math.min(end, next + this.reportInterval);
+            parkUntil(next);
+            if (!connection.isRunning()) {
+                this.disconnects.increment();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Build the text of a message, starting with when it was meant to be sent
+     *
+     * @param sendAt - when the message was meant to be sent, as a System.nanoTime()
+     * @param random - the sending thread's source of randomness
+     * @return the text
+     */
+    private String text(long sendAt, Random random) {
+        String stamp = Long.toString(sendAt);
+        int fill = Math.max(0, this.sizes.next(random) - stamp.length() - 2);
+        return new StringBuilder(stamp.length() + fill + 2)
+                .append(stamp).append(' ')
+                .append(this.filler, 0, fill)
+                .append('\n')
+                .toString();
+    }
+
+    /**
+     * Print the totals of the test
+     *
+     * @param seconds - the length of the test, in seconds
+     */
+    private void printSummary(double seconds) {
+        long sent = this.sent.sum();
+        long delivered = this.delivered.sum();
+        System.out.println();
+        System.out.printf("Users:      %d signed in, %d couldn't connect, %d couldn't sign in, %d disconnected%n",
+                this.connected.sum(), this.connectFailures.sum(), this.loginFailures.sum(), this.disconnects.sum());
+        System.out.printf("Messages:   %d sent (%.0f/s), %d delivered back (%.0f/s), %d never arrived, %d chat reloads%n",
+                sent, sent / seconds, delivered, delivered / seconds, Math.max(0, sent - delivered),
+                this.reloads.sum());
+        System.out.printf("Fan-out:    %d received by all users (%.0f/s)%n",
+                this.received.sum(), this.received.sum() / seconds);
+        System.out.printf("Latency:    %s%n", this.latency);
+    }
+
+    /**
+     * Wait until a time
+     *
+     * @param deadline - the time, as a System.nanoTime()
+     */
+    private static void parkUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Counts the messages a user receives, and times the ones the user sent
+     */
+    private final class Receiver implements ChatListener {
+
+        /**
+         * The user's username
+         */
+        private final String username;
+
+        /**
+         * @param username - the user's username
+         */
+        Receiver(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public void messagesAdded(ChatRoom chatRoom, List<UserMessage> messages) {
+            long now = System.nanoTime();
+            received.add(messages.size());
+            for (UserMessage message : messages) {
+                if (!this.username.equals(message.getUsername())) {
+                    continue;
+                }
+                String text = message.getMessage();
+                int space = text.indexOf(' ');
+                if (space > 0) {
+                    latency.record(now - Long.parseLong(text.substring(0, space)));
+                    delivered.increment();
+                }
+            }
+        }
+
+        @Override
+        public void chatChanged(ChatRoom chatRoom) {
+            reloads.increment();
+        }
+    }
+}
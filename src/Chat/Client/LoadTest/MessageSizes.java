@@ -0,0 +1,130 @@
+package Chat.Client.LoadTest;
+
+import java.util.Random;
+
+/**
+ * How long the messages sent by the simulated users are, in chars.
+ * <p>
+ * Written on the command line as one of
+ * <ul>
+ * <li>fixed:SIZE - every message is SIZE chars</li>
+ * <li>uniform:MIN-MAX - any size from MIN to MAX chars, equally likely</li>
+ * <li>exponential:MEAN - mostly short messages with a long tail, MEAN chars on average</li>
+ * </ul>
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Modified: October, 2026
+ */
+public class MessageSizes {
+
+    /**
+     * The longest message that is sent, in chars
+     */
+    public static final int MAX_SIZE = 64 * 1024;
+
+    /**
+     * The kind of distribution
+     */
+    private final String kind;
+
+    /**
+     * The smallest size, or the mean of an exponential distribution
+     */
+    private final int min;
+
+    /**
+     * The largest size
+     */
+    private final int max;
+
+    /**
+     * Create a distribution
+     *
+     * @param kind - fixed, uniform or exponential
+     * @param min  - the smallest size, or the mean of an exponential distribution
+     * @param max  - the largest size
+     */
+    private MessageSizes(String kind, int min, int max) {
+        this.kind = kind;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Read a distribution written on the command line
+     *
+     * @param spec - the distribution, such as uniform:20-200
+     * @return the distribution
+     * @throws IllegalArgumentException if the distribution isn't one of the known ones
+     */
+    public static MessageSizes parse(String spec) {
+        String[] parts = spec.split(":", 2);
+        try {
+            switch (parts[0]) {
+                case "fixed":
+                    int size = checkSize(Integer.parseInt(parts[1]));
+                    return new MessageSizes(parts[0], size, size);
+                case "uniform":
+                    String[] range = parts[1].split("-", 2);
+                    int min = checkSize(Integer.parseInt(range[0]));
+                    int max = checkSize(Integer.parseInt(range[1]));
+                    if (min > max) {
+                        break;
+                    }
+                    return new MessageSizes(parts[0], min, max);
+                case "exponential":
+                    int mean = checkSize(Integer.parseInt(parts[1]));
+                    return new MessageSizes(parts[0], mean, MAX_SIZE);
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException("Unknown message size distribution: " + spec);
+    }
+
+    /**
+     * @param size - a size from the command line
+     * @return the size
+     * @throws NumberFormatException if the size is out of range
+     */
+    private static int checkSize(int size) {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new NumberFormatException("Message sizes must be from 1 to " + MAX_SIZE);
+        }
+        return size;
+    }
+
+    /**
+     * Pick the size of the next message
+     *
+     * @param random - the source of randomness, not shared between threads
+     * @return the size, in chars
+     */
+    public int next(Random random) {
+        switch (this.kind) {
+            case "uniform":
+                return this.min + random.nextInt(this.max - this.min + 1);
+            case "exponential":
+                long size = Math.round(-this.min * Math.log(1 - random.nextDouble()));
+                return (int) Math.max(1, Math.min(size, this.max));
+            default:
+                return this.min;
+        }
+    }
+
+    /**
+     * @return the distribution as written on the command line
+     */
+    @Override
+    public String toString() {
+        switch (this.kind) {
+            case "uniform":
+                return this.kind + ":" + this.min + "-" + this.max;
+            default:
+                return this.kind + ":" + this.min;
+        }
+    }
+}
@@ -1,22 +1,48 @@
 package Chat.Client.Network;
 
 import Chat.*;
+import Chat.Protocol.FlushStats;
+import Chat.Protocol.Handshake;
+import Chat.Protocol.MessageDecoder;
+import Chat.Protocol.MessageEncoder;
+import Chat.Protocol.WriteBatching;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class that will allow for a user to connect with the ChatServer
+ * <p>
+ * After the Handshake, requests are sent back and forth as compact
+ * binary frames. Requests are queued and written by a writer thread,
+ * which coalesces the requests sent within a short linger window into a
+ * single flush (see WriteBatching).
  *
  * @author Samuel Tregea
  * <p>
- * Last Modified: April, 2019
+ * Last Modified: October, 2026
  */
 public class ServerConnection {
 
+    /**
+     * The longest wait for the server to answer the handshake and the
+     * sign in, in milliseconds. A connection the server never accepted
+     * looks connected, and would otherwise wait for the greeting forever.
+     */
+    public static final int SIGN_IN_TIMEOUT = 10000;
+
     /**
      * the socket
      */
@@ -25,38 +51,138 @@ public class ServerConnection {
     /**
      * reads MessageRequests from the server
      */
-    private ObjectInputStream clientIn;
+    private InputStream clientIn;
 
     /**
      * writes MessageRequests to the server
      */
-    private ObjectOutputStream clientOut;
+    private OutputStream clientOut;
+
+    /**
+     * turns frames from the server into MessageRequests
+     */
+    private MessageDecoder decoder;
+
+    /**
+     * turns MessageRequests into frames for the server
+     */
+    private MessageEncoder encoder;
+
+    /**
+     * requests waiting to be written to the server
+     */
+    private final LinkedBlockingQueue<MessageRequest<?>> outgoing = new LinkedBlockingQueue<>();
 
     /**
-     * the model
+     * how the writer coalesces requests, and the socket options
+     */
+    private final WriteBatching batching;
+
+    /**
+     * counts the requests written in each flush
+     */
+    private final FlushStats flushStats = new FlushStats();
+
+    /**
+     * the model of the default room
      */
     private ChatRoom chatRoom;
 
+    /**
+     * the models of the rooms the user is in, by name
+     */
+    private final Map<String, ChatRoom> rooms = new ConcurrentHashMap<>();
+
     /**
      * true when you want this program to run
      */
     private boolean go;
 
+    /**
+     * Connect to the server
+     *
+     * @param host - the host of the server
+     * @param port - the port of the server
+     * @param user - the user signing in
+     */
     public ServerConnection(String host, int port, Users user) {
+        this(host, port, user, null);
+    }
+
+    /**
+     * Connect to the server again, keeping the chat from an earlier
+     * connection. Only the messages sent since then are downloaded.
+     *
+     * @param host     - the host of the server
+     * @param port     - the port of the server
+     * @param user     - the user signing in
+     * @param chatRoom - the chat from the earlier connection, or null to start with an empty chat
+     */
+    public ServerConnection(String host, int port, Users user, ChatRoom chatRoom) {
+        this(host, port, user, chatRoom, WriteBatching.DEFAULT);
+    }
+
+    /**
+     * Connect to the server, keeping the chat from an earlier connection
+     * and coalescing writes the given way
+     *
+     * @param host     - the host of the server
+     * @param port     - the port of the server
+     * @param user     - the user signing in
+     * @param chatRoom - the chat from the earlier connection, or null to start with an empty chat
+     * @param batching - how writes are coalesced, and the socket options
+     */
+    public ServerConnection(String host, int port, Users user, ChatRoom chatRoom, WriteBatching batching) {
+        this(host, port, user, chatRoom, batching, null);
+    }
+
+    /**
+     * Connect to the server, running the connection's reader and writer
+     * on the given Executor, such as one that runs each task on a virtual
+     * thread, so that many connections can be opened by one process
+     *
+     * @param host     - the host of the server
+     * @param port     - the port of the server
+     * @param user     - the user signing in
+     * @param chatRoom - the chat from the earlier connection, or null to start with an empty chat
+     * @param batching - how writes are coalesced, and the socket options
+     * @param threads  - runs the reader and the writer, or null to give each a thread of its own
+     */
+    public ServerConnection(String host, int port, Users user, ChatRoom chatRoom, WriteBatching batching,
+                            Executor threads) {
+        this.chatRoom = chatRoom;
+        this.batching = batching;
         try {
-            this.sock = new Socket(host, port);
-            this.clientIn = new ObjectInputStream(sock.getInputStream());
-            this.clientOut = new ObjectOutputStream(sock.getOutputStream());
+            this.sock = new Socket();
+            // the buffer sizes have to be set before connecting to take effect
+            batching.configure(this.sock);
+            this.sock.connect(new InetSocketAddress(host, port));
+            this.clientIn = new BufferedInputStream(sock.getInputStream());
+            this.clientOut = new BufferedOutputStream(sock.getOutputStream());
+            this.sock.setSoTimeout(SIGN_IN_TIMEOUT);
+            Handshake.connect(this.clientIn, this.clientOut);
+            this.decoder = new MessageDecoder();
+            this.encoder = new MessageEncoder();
             this.go = true;
 
             this.login(user);
+            this.sock.setSoTimeout(0);
 
             // start the chat!
             // Run rest of client in separate thread.
             // This threads stops on its own at the end of the game and
             // does not need to rendezvous with other software components.
-            Thread netThread = new Thread(() -> this.run());
-            netThread.start();
+            if (threads != null) {
+                threads.execute(this::run);
+                threads.execute(this::write);
+            } else {
+                Thread netThread = new Thread(() -> this.run());
+                netThread.start();
+
+                Thread writer = new Thread(this::write, "client-writer");
+                writer.setDaemon(true);
+                writer.start();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -78,13 +204,16 @@ public class ServerConnection {
     private void login(Users user) {
         try {
 
+            // tell the server where our chat ends, so we are only sent what we missed
+            Users login = new Users(user.getUsername());
+            login.setLastSeen(this.chatRoom == null ? -1 : this.chatRoom.getLastSequence());
+
             // send LOGIN request to server
-            MessageRequest<Users> request = new MessageRequest<>(MessageRequest.RequestType.LOGIN, user);
-            clientOut.writeUnshared(request);
-            clientOut.flush();
+            MessageRequest<Users> request = new MessageRequest<>(MessageRequest.RequestType.LOGIN, login);
+            writeRequest(request);
 
             // receiving login information from server
-            MessageRequest<?> login_info = (MessageRequest<?>) this.clientIn.readUnshared();// getting stuck here after reprompt for new username
+            MessageRequest<?> login_info = readRequest();// getting stuck here after reprompt for new username
             handleRequest(login_info);
 
         } catch (IOException | ClassNotFoundException e) {
@@ -96,26 +225,137 @@ public class ServerConnection {
     /**
      * Update the chat room model.
      *
-     * @param message - the message that was sent
+     * @param chatRoom - the model of the room the message was sent to
+     * @param message  - the message that was sent
+     */
+    private void updateChat(ChatRoom chatRoom, UserMessage message) {
+        // already sent to us in the history page
+        if (message.getSequence() >= 0 && message.getSequence() <= chatRoom.getLastSequence()) {
+            return;
+        }
+        chatRoom.addMessage(message);
+    }
+
+    /**
+     * Ask the server for the page of messages before the oldest one in the
+     * default room. The chat is updated when the page arrives.
+     *
+     * @return false if the server has no older messages
      */
-    private void updateChat(UserMessage message) {
-        this.chatRoom.addMessage(message);
+    public boolean requestOlderHistory() {
+        return requestOlderHistory(ChatRoom.DEFAULT_ROOM);
     }
 
     /**
-     * sends the request to the server
+     * Ask the server for the page of messages before the oldest one in a
+     * room. The room's chat is updated when the page arrives.
+     *
+     * @param room - the name of the room
+     * @return false if the user isn't in the room or the server has no older messages
+     */
+    public boolean requestOlderHistory(String room) {
+        room = roomKey(room);
+        ChatRoom chat = this.rooms.get(room);
+        if (chat == null || !chat.hasOlderHistory()) {
+            return false;
+        }
+        sendMessage(new MessageRequest<>(MessageRequest.RequestType.REQUEST_HISTORY, new HistoryRequest(room, chat.getFirstSequence())));
+        return true;
+    }
+
+    /**
+     * Join a room. Its newest messages arrive shortly after, followed by
+     * the messages sent to it from then on.
+     *
+     * @param room - the name of the room
+     * @return the room's chat, to be observed
+     */
+    public ChatRoom joinRoom(String room) {
+        room = roomKey(room);
+        ChatRoom chat = this.rooms.computeIfAbsent(room, name -> new ChatRoom());
+        sendMessage(new MessageRequest<>(MessageRequest.RequestType.JOIN_ROOM, room));
+        return chat;
+    }
+
+    /**
+     * Leave a room, no longer getting its messages
+     *
+     * @param room - the name of the room
+     */
+    public void leaveRoom(String room) {
+        room = roomKey(room);
+        sendMessage(new MessageRequest<>(MessageRequest.RequestType.LEAVE_ROOM, room));
+        this.rooms.remove(room);
+    }
+
+    /**
+     * queues the request to be sent to the server
      *
      * @param request a PlaceRequest
      */
     public void sendMessage(MessageRequest<?> request) {
+        this.outgoing.add(request);
+    }
+
+    /**
+     * Write a request to the server straight away. Only used before the
+     * writer is started.
+     *
+     * @param request - the request
+     * @throws IOException if the request could not be written
+     */
+    private void writeRequest(MessageRequest<?> request) throws IOException {
+        this.encoder.write(request, this.clientOut);
+        this.clientOut.flush();
+    }
+
+    /**
+     * Write queued requests to the server. The stream is flushed once the
+     * linger window after the first request has passed with nothing more
+     * queued, or the most frames for a flush are written.
+     */
+    private void write() {
+        int maxFrames = this.batching.getMaxFrames();
         try {
-            this.clientOut.writeUnshared(request);
-            this.clientOut.flush();
+            while (isRunning()) {
+                MessageRequest<?> request = this.outgoing.take();
+                long deadline = System.nanoTime() + this.batching.getLingerNanos();
+                int frames = 0;
+                do {
+                    this.encoder.write(request, this.clientOut);
+                    frames++;
+                } while (frames < maxFrames
+                        && (request = this.outgoing.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null);
+                this.clientOut.flush();
+                this.flushStats.record(frames);
+            }
+        } catch (InterruptedException e) {
+            // the client is shutting down
         } catch (IOException e) {
-            e.printStackTrace();
+            if (isRunning()) {
+                e.printStackTrace();
+            }
         }
     }
 
+    /**
+     * @return the number of requests written in each flush
+     */
+    public FlushStats getFlushStats() {
+        return this.flushStats;
+    }
+
+    /**
+     * Read the next request from the server, blocking until it arrives
+     *
+     * @return the request
+     * @throws IOException            if the connection is lost
+     * @throws ClassNotFoundException if the request is not a known class
+     */
+    private MessageRequest<?> readRequest() throws IOException, ClassNotFoundException {
+        return this.decoder.read(this.clientIn);
+    }
+
     /**
      * stops the network client
      */
@@ -147,12 +387,30 @@ public class ServerConnection {
     }
 
     /**
-     * @return the chat room
+     * @return the chat room of the default room
      */
     public ChatRoom getChatRoom() {
         return this.chatRoom;
     }
 
+    /**
+     * @param room - the name of a room
+     * @return the room's chat, or null if the user isn't in it
+     */
+    public ChatRoom getChatRoom(String room) {
+        return this.rooms.get(roomKey(room));
+    }
+
+    /**
+     * Room names ignore case, the server sends them in lower case
+     *
+     * @param room - the name of a room
+     * @return the name the room's messages arrive with
+     */
+    private static String roomKey(String room) {
+        return room == null ? null : room.toLowerCase(Locale.ROOT);
+    }
+
     /**
      * Handle the message from the server
      *
@@ -163,8 +421,16 @@ public class ServerConnection {
         switch (request.getType()) {
             case LOGIN_SUCCESS:
                 System.out.println("Login Successful.");
-                MessageRequest<String> chat_messages = (MessageRequest<String>) this.clientIn.readUnshared();// ChatRoom from server
-                this.chatRoom = new ChatRoom(chat_messages.getData());
+                MessageRequest<?> chat_messages = readRequest();// ChatRoom from server
+                if (chat_messages.getType() == MessageRequest.RequestType.HISTORY_PAGE) {
+                    if (this.chatRoom == null) {
+                        this.chatRoom = new ChatRoom();
+                    }
+                    this.chatRoom.addHistory((HistoryPage) chat_messages.getData());
+                } else {
+                    this.chatRoom = new ChatRoom((String) chat_messages.getData());
+                }
+                this.rooms.put(ChatRoom.DEFAULT_ROOM, this.chatRoom);
                 break;
             case INVALID_USERNAME:
                 this.chatRoom = new ChatRoom(MessageProtocol.INVALID_USERNAME);
@@ -188,12 +454,26 @@ public class ServerConnection {
     private void run() {
         while (isRunning()) {
             try {
-                MessageRequest<?> request = (MessageRequest<?>) this.clientIn.readUnshared();
+                MessageRequest<?> request = readRequest();
                 switch (request.getType()) {
 
                     case MESSAGE_SENT:
-                        updateChat((UserMessage) request.getData());
-                        this.chatRoom.messageSent();
+                        UserMessage message = (UserMessage) request.getData();
+                        ChatRoom chat = this.rooms.get(message.getRoom());
+                        if (chat != null) {
+                            updateChat(chat, message);
+                        }
+                        break;
+                    case CHAT_ROOM:
+                        // the server fell behind sending us messages and resent the whole chat
+                        this.chatRoom.setMessage((String) request.getData());
+                        break;
+                    case HISTORY_PAGE:
+                        HistoryPage page = (HistoryPage) request.getData();
+                        ChatRoom paged = this.rooms.get(page.getRoom());
+                        if (paged != null) {
+                            paged.addHistory(page);
+                        }
                         break;
                     case ERROR:
                         error((String) request.getData());
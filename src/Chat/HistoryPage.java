@@ -0,0 +1,137 @@
+package Chat;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A run of consecutive messages from a chat room, sent to a client that
+ * signed in with the last sequence it had seen, or that asked for older
+ * messages.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class HistoryPage implements Serializable {
+
+    /**
+     * Pinned since pages were added, so clients that read serialized
+     * objects can still read HISTORY_PAGE requests after the class changes
+     */
+    private static final long serialVersionUID = 8682450068417463249L;
+
+    /**
+     * The most messages the server sends in a single page
+     */
+    public static final int PAGE_SIZE = 200;
+
+    /**
+     * The messages, oldest first. Their sequences run from first up to first + size - 1.
+     */
+    private final ArrayList<UserMessage> messages;
+
+    /**
+     * The sequence of the first message in the page
+     */
+    private final long first;
+
+    /**
+     * The sequence of the oldest message the server still has
+     */
+    private final long oldest;
+
+    /**
+     * true if the page does not follow on from what the client had, so
+     * the client should throw away its messages and start over with this page
+     */
+    private final boolean replace;
+
+    /**
+     * The name of the room the messages were sent to
+     */
+    private final String room;
+
+    /**
+     * Create a page of the default room
+     *
+     * @param messages - the messages, oldest first
+     * @param first    - the sequence of the first message
+     * @param oldest   - the sequence of the oldest message the server still has
+     * @param replace  - true if the client should start over with this page
+     */
+    public HistoryPage(List<UserMessage> messages, long first, long oldest, boolean replace) {
+        this(ChatRoom.DEFAULT_ROOM, messages, first, oldest, replace);
+    }
+
+    /**
+     * Create the page
+     *
+     * @param room     - the name of the room the messages were sent to
+     * @param messages - the messages, oldest first
+     * @param first    - the sequence of the first message
+     * @param oldest   - the sequence of the oldest message the server still has
+     * @param replace  - true if the client should start over with this page
+     */
+    public HistoryPage(String room, List<UserMessage> messages, long first, long oldest, boolean replace) {
+        this.room = room;
+        this.messages = new ArrayList<>(messages);
+        this.first = first;
+        this.oldest = oldest;
+        this.replace = replace;
+    }
+
+    /**
+     * @return the name of the room the messages were sent to
+     */
+    public String getRoom() {
+        return this.room;
+    }
+
+    /**
+     * @return the messages, oldest first
+     */
+    public List<UserMessage> getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * @return the sequence of the first message in the page
+     */
+    public long getFirst() {
+        return this.first;
+    }
+
+    /**
+     * @return the sequence after the last message in the page
+     */
+    public long getNext() {
+        return this.first + this.messages.size();
+    }
+
+    /**
+     * @return the sequence of the oldest message the server still has
+     */
+    public long getOldest() {
+        return this.oldest;
+    }
+
+    /**
+     * @return true if the client should throw away its messages and start over with this page
+     */
+    public boolean isReplace() {
+        return this.replace;
+    }
+
+    /**
+     * @return true if the server has messages older than this page
+     */
+    public boolean hasOlder() {
+        return this.oldest < this.first;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryPage " + this.room + " [" + this.first + ", " + getNext() + ")";
+    }
+}
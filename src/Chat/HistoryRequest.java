@@ -0,0 +1,60 @@
+package Chat;
+
+import java.io.Serializable;
+
+/**
+ * A client's request for the page of a room's messages that comes just
+ * before a sequence.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class HistoryRequest implements Serializable {
+
+    /**
+     * Pinned since history requests were added, so clients that send
+     * serialized objects keep working when fields are added
+     */
+    private static final long serialVersionUID = -4359537013824856617L;
+
+    /**
+     * The name of the room
+     */
+    private final String room;
+
+    /**
+     * The sequence the page should end before
+     */
+    private final long before;
+
+    /**
+     * Create the request
+     *
+     * @param room   - the name of the room, null for the default room
+     * @param before - the sequence the page should end before
+     */
+    public HistoryRequest(String room, long before) {
+        this.room = room;
+        this.before = before;
+    }
+
+    /**
+     * @return the name of the room, never null
+     */
+    public String getRoom() {
+        return this.room == null ? ChatRoom.DEFAULT_ROOM : this.room;
+    }
+
+    /**
+     * @return the sequence the page should end before
+     */
+    public long getBefore() {
+        return this.before;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryRequest " + getRoom() + " before " + this.before;
+    }
+}
@@ -0,0 +1,165 @@
+package Chat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds that many threads can record
+ * into at once, laid out the way HdrHistogram lays out its counts.
+ * <p>
+ * Values below 1024 each have a bucket of their own. Above that, every
+ * power of two is split into 512 buckets, so a value is kept to within
+ * 0.2% of itself whatever its size, from a nanosecond to days, in a fixed
+ * array of counts. Recording a value is an atomic increment of its bucket;
+ * the count, sum and maximum are striped, so threads recording different
+ * values never contend.
+ * <p>
+ * Used by the load generator to time messages, and by the server's metrics.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of bits of a value that are kept exactly
+     */
+    private static final int SUB_BUCKET_BITS = 10;
+
+    /**
+     * The number of values that have a bucket of their own
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets each power of two above SUB_BUCKETS is split into
+     */
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    /**
+     * The counts of the values in each bucket
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * The number of values recorded
+     */
+    private final LongAdder total;
+
+    /**
+     * The sum of the values recorded
+     */
+    private final LongAdder sum;
+
+    /**
+     * The largest value recorded
+     */
+    private final LongAccumulator max;
+
+    /**
+     * Create an empty histogram
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(indexOf(Long.MAX_VALUE) + 1);
+        this.total = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Record a value. May be called from any thread.
+     *
+     * @param nanos - the value, negative values are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(indexOf(value));
+        this.total.increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return this.total.sum();
+    }
+
+    /**
+     * @return the sum of the values recorded, in nanoseconds
+     */
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    /**
+     * @return the largest value recorded, in nanoseconds
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Find the value a percentage of the recorded values are at or below
+     *
+     * @param percentile - the percentage, from 0 to 100
+     * @return the value, in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = this.total.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            seen += this.counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @param value - a value, not negative
+     * @return the index of the bucket the value is counted in
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // shift the value down to between HALF and SUB_BUCKETS
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) ((value >>> shift) - HALF);
+    }
+
+    /**
+     * @param index - the index of a bucket
+     * @return the largest value counted in the bucket
+     */
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF + HALF;
+        long highest = ((subBucket + 1) << shift) - 1;
+        // the last buckets end past Long.MAX_VALUE
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+
+    /**
+     * @return the percentiles of the recorded values, in milliseconds
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms p99.99=%.3fms max=%.3fms",
+                getCount(), getValueAtPercentile(50) / 1e6, getValueAtPercentile(90) / 1e6,
+                getValueAtPercentile(99) / 1e6, getValueAtPercentile(99.9) / 1e6,
+                getValueAtPercentile(99.99) / 1e6, getMax() / 1e6);
+    }
+}
@@ -0,0 +1,333 @@
+package Chat;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only store of the messages sent in a chat room.
+ * <p>
+ * Messages are kept in fixed-size segments so that appending a message never
+ * copies the rest of the history. The log is bounded by a maximum number of
+ * messages and an estimated number of bytes, and the oldest messages are
+ * evicted once either cap is passed.
+ * <p>
+ * Every message is given an index when it is appended. Indexes keep counting
+ * up after old messages are evicted, so they can be used to ask for the
+ * messages a reader has not seen yet.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class MessageLog implements Serializable {
+
+    /**
+     * Pinned since the log replaced ChatRoom's list of messages, so a
+     * serialized ChatRoom, which holds its log, can still be read after
+     * the log changes
+     */
+    private static final long serialVersionUID = 2329681906856438380L;
+
+    /**
+     * Number of messages held in a single segment
+     */
+    public static final int SEGMENT_SIZE = 256;
+
+    /**
+     * Default maximum number of messages kept in the log
+     */
+    public static final int DEFAULT_MAX_MESSAGES = 10000;
+
+    /**
+     * Default maximum number of (estimated) bytes kept in the log
+     */
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Rough per-message cost of the object headers and fields
+     */
+    private static final int MESSAGE_OVERHEAD = 64;
+
+    /**
+     * The segments of the log, oldest first
+     */
+    private final ArrayDeque<Segment> segments;
+
+    /**
+     * The maximum number of messages to retain
+     */
+    private final int maxMessages;
+
+    /**
+     * The maximum number of estimated bytes to retain
+     */
+    private final long maxBytes;
+
+    /**
+     * The index of the oldest retained message
+     */
+    private long firstIndex;
+
+    /**
+     * The number of retained messages
+     */
+    private int size;
+
+    /**
+     * The estimated size of the retained messages
+     */
+    private long bytes;
+
+    /**
+     * Create a log with the default retention caps
+     */
+    public MessageLog() {
+        this(DEFAULT_MAX_MESSAGES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Create a log with the given retention caps
+     *
+     * @param maxMessages - the maximum number of messages to keep
+     * @param maxBytes    - the maximum number of estimated bytes to keep
+     */
+    public MessageLog(int maxMessages, long maxBytes) {
+        if (maxMessages < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Retention caps must be positive.");
+        }
+        this.segments = new ArrayDeque<>();
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.firstIndex = 0;
+        this.size = 0;
+        this.bytes = 0;
+    }
+
+    /**
+     * Append a message to the end of the log, evicting the oldest
+     * messages if a retention cap is passed.
+     *
+     * @param message - the message to be added
+     * @return the index given to the message
+     */
+    public synchronized long append(UserMessage message) {
+        Segment tail = this.segments.peekLast();
+        if (tail == null || tail.isFull()) {
+            tail = new Segment();
+            this.segments.addLast(tail);
+        }
+        tail.add(message);
+
+        long index = this.firstIndex + this.size;
+        this.size++;
+        this.bytes += estimateSize(message);
+
+        // always keep the newest message, even if it is over the byte cap on its own
+        while (this.size > 1 && (this.size > this.maxMessages || this.bytes > this.maxBytes)) {
+            evictOldest();
+        }
+        return index;
+    }
+
+    /**
+     * Put older messages in front of the oldest retained message. Only as
+     * many as fit under the retention caps are kept, newest first, so
+     * nothing already in the log is evicted to make room.
+     *
+     * @param older - the messages, oldest first, that came just before the first retained message
+     * @return the number of messages that were added
+     */
+    public synchronized int prepend(List<UserMessage> older) {
+        int added = 0;
+        for (int i = older.size() - 1; i >= 0; i--) {
+            UserMessage message = older.get(i);
+            long size = estimateSize(message);
+            if (this.size >= this.maxMessages || (this.size > 0 && this.bytes + size > this.maxBytes)) {
+                break;
+            }
+
+            Segment head = this.segments.peekFirst();
+            if (head == null || head.start == 0) {
+                // a segment that fills from the back, so it counts as full and is never appended to
+                head = new Segment();
+                head.start = SEGMENT_SIZE;
+                head.count = SEGMENT_SIZE;
+                this.segments.addFirst(head);
+            }
+            head.messages[--head.start] = message;
+
+            this.firstIndex--;
+            this.size++;
+            this.bytes += size;
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Remove every message from the log. Indexes keep counting from
+     * where they left off.
+     */
+    public synchronized void clear() {
+        this.firstIndex += this.size;
+        this.segments.clear();
+        this.size = 0;
+        this.bytes = 0;
+    }
+
+    /**
+     * Remove every message from the log and give the next appended message
+     * the given index
+     *
+     * @param nextIndex - the index of the next message
+     */
+    public synchronized void clear(long nextIndex) {
+        clear();
+        this.firstIndex = nextIndex;
+    }
+
+    /**
+     * @return the index of the oldest retained message
+     */
+    public synchronized long getFirstIndex() {
+        return this.firstIndex;
+    }
+
+    /**
+     * @return the index the next appended message will be given
+     */
+    public synchronized long getNextIndex() {
+        return this.firstIndex + this.size;
+    }
+
+    /**
+     * @return the number of retained messages
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the estimated number of bytes held by the retained messages
+     */
+    public synchronized long getEstimatedBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Copy out the retained messages in the range [from, to).
+     * The range is clamped to the messages that are still retained.
+     *
+     * @param from - the index of the first message
+     * @param to   - the index after the last message
+     * @return the messages, oldest first
+     */
+    public synchronized List<UserMessage> getRange(long from, long to) {
+        long start = Math.max(from, this.firstIndex);
+        long end = Math.min(to, this.firstIndex + this.size);
+        List<UserMessage> messages = new ArrayList<>((int) Math.max(0, end - start));
+        if (start >= end) {
+            return messages;
+        }
+
+        // offset of 'start' within the retained messages
+        long skip = start - this.firstIndex;
+        for (Segment segment : this.segments) {
+            int available = segment.count - segment.start;
+            if (skip >= available) {
+                skip -= available;
+                continue;
+            }
+            for (int i = segment.start + (int) skip; i < segment.count && start < end; i++, start++) {
+                messages.add(segment.messages[i]);
+            }
+            skip = 0;
+            if (start >= end) {
+                break;
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @return a copy of every retained message, oldest first
+     */
+    public synchronized List<UserMessage> getAll() {
+        return getRange(this.firstIndex, this.firstIndex + this.size);
+    }
+
+    /**
+     * Drop the oldest retained message
+     */
+    private void evictOldest() {
+        Segment head = this.segments.peekFirst();
+        UserMessage evicted = head.messages[head.start];
+        head.messages[head.start] = null;
+        head.start++;
+        if (head.start == head.count && head.isFull()) {
+            this.segments.pollFirst();
+        }
+        this.firstIndex++;
+        this.size--;
+        this.bytes -= estimateSize(evicted);
+    }
+
+    /**
+     * Estimate how much memory a message takes up
+     *
+     * @param message - the message
+     * @return the estimated size in bytes
+     */
+    private static long estimateSize(UserMessage message) {
+        long size = MESSAGE_OVERHEAD;
+        if (message.getMessage() != null) {
+            size += 2L * message.getMessage().length();
+        }
+        if (message.getUsername() != null) {
+            size += 2L * message.getUsername().length();
+        }
+        return size;
+    }
+
+    /**
+     * A fixed-size block of messages
+     */
+    private static class Segment implements Serializable {
+
+        /**
+         * Pinned along with the log's, as the log serializes its segments
+         */
+        private static final long serialVersionUID = 4386906091600650493L;
+
+        /**
+         * The messages in this segment
+         */
+        private final UserMessage[] messages = new UserMessage[SEGMENT_SIZE];
+
+        /**
+         * The position of the oldest message that has not been evicted
+         */
+        private int start;
+
+        /**
+         * The number of messages that have been added to this segment
+         */
+        private int count;
+
+        /**
+         * @return true if no more messages fit in this segment
+         */
+        boolean isFull() {
+            return this.count == SEGMENT_SIZE;
+        }
+
+        /**
+         * @param message - the message to be added
+         */
+        void add(UserMessage message) {
+            this.messages[this.count++] = message;
+        }
+    }
+}
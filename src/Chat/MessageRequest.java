@@ -109,7 +109,30 @@ public class MessageRequest<E extends Serializable> implements Serializable {
          * due to a user already having the same username.
          * It will contain a string indicating this.
          */
-        USER_ALREADY_EXISTS
+        USER_ALREADY_EXISTS,
+        /**
+         * Used by the server, instead of CHAT_ROOM, to send a client that
+         * signed in with a last seen sequence the messages it missed, or
+         * to answer a REQUEST_HISTORY. It will contain a HistoryPage.
+         */
+        HISTORY_PAGE,
+        /**
+         * A client's request for the page of messages before the oldest
+         * one it has in a room. It will contain a HistoryRequest.
+         */
+        REQUEST_HISTORY,
+        /**
+         * A client's request to join a room, creating it if it doesn't
+         * exist. It will contain the name of the room. The server answers
+         * with a HISTORY_PAGE of the room's newest messages and then sends
+         * the room's messages as they arrive.
+         */
+        JOIN_ROOM,
+        /**
+         * A client's request to stop getting a room's messages. It will
+         * contain the name of the room.
+         */
+        LEAVE_ROOM
 
     }
 
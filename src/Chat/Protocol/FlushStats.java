@@ -0,0 +1,80 @@
+package Chat.Protocol;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how many frames go out in each flush, to show how well writes
+ * are being coalesced. Shared by every writer on one side, so it only
+ * uses counters that many threads can add to at once.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public final class FlushStats {
+
+    /**
+     * The number of flushes
+     */
+    private final LongAdder flushes = new LongAdder();
+
+    /**
+     * The number of frames written
+     */
+    private final LongAdder frames = new LongAdder();
+
+    /**
+     * The most frames written in a single flush
+     */
+    private final AtomicInteger maxFrames = new AtomicInteger();
+
+    /**
+     * Count a flush
+     *
+     * @param count - the number of frames written in the flush
+     */
+    public void record(int count) {
+        this.flushes.increment();
+        this.frames.add(count);
+        int max;
+        while (count > (max = this.maxFrames.get()) && !this.maxFrames.compareAndSet(max, count)) {
+            // another writer raised the max first, try again
+        }
+    }
+
+    /**
+     * @return the number of flushes
+     */
+    public long getFlushes() {
+        return this.flushes.sum();
+    }
+
+    /**
+     * @return the number of frames written
+     */
+    public long getFrames() {
+        return this.frames.sum();
+    }
+
+    /**
+     * @return the most frames written in a single flush
+     */
+    public int getMaxFrames() {
+        return this.maxFrames.get();
+    }
+
+    /**
+     * @return the average number of frames written in a flush
+     */
+    public double getFramesPerFlush() {
+        long flushes = getFlushes();
+        return flushes == 0 ? 0 : (double) getFrames() / flushes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("frames=%d flushes=%d frames/flush=%.2f max=%d",
+                getFrames(), getFlushes(), getFramesPerFlush(), getMaxFrames());
+    }
+}
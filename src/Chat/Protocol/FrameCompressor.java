@@ -0,0 +1,113 @@
+package Chat.Protocol;
+
+import Chat.MessageRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses encoded frames for clients that speak version 4 of the protocol
+ * (see WireFormat). Chat room text and history pages are always compressed,
+ * as they are long and repetitive; other frames only once they reach THRESHOLD.
+ * <p>
+ * Deflaters hold a fair amount of native memory, so they are kept in a pool
+ * and shared by the threads that compress, rather than made for every frame.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public final class FrameCompressor {
+
+    /**
+     * The smallest frame of other types that is compressed, in bytes
+     */
+    public static final int THRESHOLD = 512;
+
+    /**
+     * Deflaters that are not in use
+     */
+    private static final ConcurrentLinkedQueue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Not used, all methods are static
+     */
+    private FrameCompressor() {
+    }
+
+    /**
+     * @param type   - the type of the request
+     * @param length - the length of its frame, in bytes
+     * @return true if the frame should be compressed
+     */
+    public static boolean shouldCompress(MessageRequest.RequestType type, int length) {
+        return type == MessageRequest.RequestType.CHAT_ROOM
+                || type == MessageRequest.RequestType.HISTORY_PAGE
+                || length >= THRESHOLD;
+    }
+
+    /**
+     * Compress a frame
+     *
+     * @param frame - a whole frame, with its length in front
+     * @return the compressed frame, or the frame itself if compressing it doesn't make it smaller
+     * @throws IOException if the frame is malformed
+     */
+    public static byte[] compress(byte[] frame) throws IOException {
+        int length = MessageDecoder.peekFrameLength(ByteBuffer.wrap(frame));
+        int header = MessageDecoder.headerSize(length);
+
+        // leave room in front for the length, which is written once it is known
+        byte[] compressed = new byte[WireFormat.MAX_VARINT_SIZE + frame.length];
+        int position = WireFormat.MAX_VARINT_SIZE;
+        compressed[position++] = WireFormat.COMPRESSED;
+        position = writeVarInt(compressed, position, length);
+
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater();
+        }
+        try {
+            deflater.setDictionary(WireFormat.DICTIONARY);
+            deflater.setInput(frame, header, length);
+            deflater.finish();
+            while (!deflater.finished() && position < compressed.length) {
+                position += deflater.deflate(compressed, position, compressed.length - position);
+            }
+            if (!deflater.finished()) {
+                return frame;
+            }
+        } finally {
+            deflater.reset();
+            DEFLATERS.offer(deflater);
+        }
+
+        int payload = position - WireFormat.MAX_VARINT_SIZE;
+        int start = WireFormat.MAX_VARINT_SIZE - WireFormat.varIntSize(payload);
+        if (position - start >= frame.length) {
+            return frame;
+        }
+        writeVarInt(compressed, start, payload);
+        return Arrays.copyOfRange(compressed, start, position);
+    }
+
+    /**
+     * Write a varint into an array
+     *
+     * @param bytes    - the array
+     * @param position - where to write it
+     * @param value    - a non-negative int
+     * @return the position after the varint
+     */
+    private static int writeVarInt(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,127 @@
+package Chat.Protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The version handshake at the start of every connection.
+ * <ol>
+ * <li>The server writes the 4 byte Java serialization stream header, which
+ * is what clients that send serialized objects are waiting for.</li>
+ * <li>A client that speaks the binary protocol answers with 'P', 'C' and the
+ * highest protocol version it speaks. A client that sends serialized objects
+ * answers with its own stream header (0xACED) instead, and the server carries
+ * on with serialized objects.</li>
+ * <li>The server answers a binary client with the version both sides will
+ * use, or REJECTED if it can't serve that client, and closes the connection.</li>
+ * </ol>
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public final class Handshake {
+
+    /**
+     * What the server writes as soon as a client connects
+     * (java.io.ObjectStreamConstants STREAM_MAGIC and STREAM_VERSION)
+     */
+    public static final byte[] GREETING = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+
+    /**
+     * The first two bytes a binary client writes
+     */
+    public static final byte[] HELLO = {'P', 'C'};
+
+    /**
+     * The highest protocol version spoken by this side. Version 2 adds
+     * sequence numbers and history pages, version 3 adds rooms and version 4
+     * compressed frames (see WireFormat).
+     */
+    public static final int VERSION = 4;
+
+    /**
+     * The lowest protocol version that can be sent compressed frames
+     */
+    public static final int COMPRESSION_VERSION = 4;
+
+    /**
+     * The lowest protocol version the server still serves
+     */
+    public static final int MIN_VERSION = 1;
+
+    /**
+     * Sent by the server instead of a version if it can't serve the client
+     */
+    public static final int REJECTED = 0;
+
+    /**
+     * Not used, all methods are static
+     */
+    private Handshake() {
+    }
+
+    /**
+     * @param first  - the first byte the client wrote
+     * @param second - the second byte the client wrote
+     * @return true if the client is sending serialized objects
+     */
+    public static boolean isLegacy(int first, int second) {
+        return first == (GREETING[0] & 0xFF) && second == (GREETING[1] & 0xFF);
+    }
+
+    /**
+     * @param first  - the first byte the client wrote
+     * @param second - the second byte the client wrote
+     * @return true if the client speaks the binary protocol
+     */
+    public static boolean isHello(int first, int second) {
+        return first == HELLO[0] && second == HELLO[1];
+    }
+
+    /**
+     * Pick the version to use with a client
+     *
+     * @param clientVersion - the highest version the client speaks
+     * @return the version to use, or REJECTED
+     */
+    public static int accept(int clientVersion) {
+        int version = Math.min(clientVersion, VERSION);
+        return version < MIN_VERSION ? REJECTED : version;
+    }
+
+    /**
+     * Run the client's side of the handshake
+     *
+     * @param in  - the stream from the server
+     * @param out - the stream to the server
+     * @return the version the server agreed to
+     * @throws IOException if the server is not a chat server or rejected the client
+     */
+    public static int connect(InputStream in, OutputStream out) throws IOException {
+        for (byte expected : GREETING) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+            if (b != (expected & 0xFF)) {
+                throw new IOException("Not a chat server");
+            }
+        }
+
+        out.write(HELLO);
+        out.write(VERSION);
+        out.flush();
+
+        int version = in.read();
+        if (version < 0) {
+            throw new EOFException("Server closed the connection");
+        }
+        if (version == REJECTED) {
+            throw new IOException("Server rejected protocol version " + VERSION);
+        }
+        return version;
+    }
+}
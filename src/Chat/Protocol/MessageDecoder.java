@@ -0,0 +1,354 @@
+package Chat.Protocol;
+
+import Chat.ChatRoom;
+import Chat.HistoryPage;
+import Chat.HistoryRequest;
+import Chat.MessageRequest;
+import Chat.UserMessage;
+import Chat.Users;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads MessageRequests from compact binary frames (see WireFormat).
+ * <p>
+ * The decoder reuses its buffer from one frame to the next, so it should
+ * only be used by one thread at a time. Only the server compresses frames,
+ * so the server's decoders are made to refuse compressed frames rather
+ * than inflate whatever a client sends.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class MessageDecoder {
+
+    /**
+     * Holds the payload of the frame being read from a stream
+     */
+    private byte[] buffer;
+
+    /**
+     * Holds the inflated payload of a compressed frame
+     */
+    private byte[] inflated;
+
+    /**
+     * Inflates compressed frames, made when the first one arrives
+     */
+    private Inflater inflater;
+
+    /**
+     * true if compressed frames are inflated, false if they are refused
+     */
+    private final boolean acceptCompressed;
+
+    /**
+     * Create a decoder that inflates compressed frames, for clients
+     */
+    public MessageDecoder() {
+        this(true);
+    }
+
+    /**
+     * Create a decoder
+     *
+     * @param acceptCompressed - true to inflate compressed frames, false to refuse them
+     */
+    public MessageDecoder(boolean acceptCompressed) {
+        this.buffer = new byte[256];
+        this.inflated = new byte[0];
+        this.acceptCompressed = acceptCompressed;
+    }
+
+    /**
+     * Read a single frame from a stream, blocking until it has arrived
+     *
+     * @param in - the stream
+     * @return the request
+     * @throws IOException if the stream is closed or the frame is malformed
+     */
+    public MessageRequest<?> read(InputStream in) throws IOException {
+        int length = readVarInt(in);
+        WireFormat.checkLength(length);
+        if (length > this.buffer.length) {
+            this.buffer = new byte[Math.max(length, this.buffer.length * 2)];
+        }
+
+        int read = 0;
+        while (read < length) {
+            int count = in.read(this.buffer, read, length - read);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            read += count;
+        }
+        return decode(ByteBuffer.wrap(this.buffer, 0, length));
+    }
+
+    /**
+     * Decode the payload of a frame, without its length prefix
+     *
+     * @param payload - the payload, positioned at its first byte
+     * @return the request
+     * @throws IOException if the payload is malformed, or is compressed and compressed frames are refused
+     */
+    public MessageRequest<?> decode(ByteBuffer payload) throws IOException {
+        try {
+            byte code = payload.get();
+            if (code == WireFormat.COMPRESSED) {
+                if (!this.acceptCompressed) {
+                    throw new IOException("Compressed frames are not accepted");
+                }
+                payload = inflate(payload);
+                code = payload.get();
+            }
+            MessageRequest.RequestType type = WireFormat.requestType(code);
+            switch (type) {
+                case LOGIN:
+                    Users user = new Users(readString(payload));
+                    if (payload.hasRemaining()) {
+                        user.setLastSeen(readVarLong(payload) - 1);
+                    }
+                    return new MessageRequest<>(type, user);
+                case SEND_MESSAGE:
+                    UserMessage sent = readMessage(payload);
+                    sent.setRoom(readRoom(payload));
+                    return new MessageRequest<>(type, sent);
+                case MESSAGE_SENT:
+                    UserMessage message = readMessage(payload);
+                    if (payload.hasRemaining()) {
+                        message.setSequence(readVarLong(payload) - 1);
+                    }
+                    message.setRoom(readRoom(payload));
+                    return new MessageRequest<>(type, message);
+                case HISTORY_PAGE:
+                    boolean replace = payload.get() != 0;
+                    long oldest = readVarLong(payload);
+                    long first = readVarLong(payload);
+                    int count = readVarInt(payload);
+                    // every message takes at least a byte, so a bad count can't allocate much
+                    if (count > payload.remaining()) {
+                        throw new IOException("Truncated history page");
+                    }
+                    List<UserMessage> messages = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        UserMessage older = readMessage(payload);
+                        older.setSequence(first + i);
+                        messages.add(older);
+                    }
+                    String room = readRoom(payload);
+                    for (UserMessage older : messages) {
+                        older.setRoom(room);
+                    }
+                    return new MessageRequest<>(type, new HistoryPage(room == null ? ChatRoom.DEFAULT_ROOM : room, messages, first, oldest, replace));
+                case REQUEST_HISTORY:
+                    long before = readVarLong(payload);
+                    return new MessageRequest<>(type, new HistoryRequest(readRoom(payload), before));
+                default:
+                    return new MessageRequest<>(type, readString(payload));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated frame", e);
+        }
+    }
+
+    /**
+     * Inflate a compressed payload into the decoder's buffer
+     *
+     * @param payload - the payload, positioned after the COMPRESSED code
+     * @return the inflated payload, positioned at its first byte
+     * @throws IOException if the payload is malformed
+     */
+    private ByteBuffer inflate(ByteBuffer payload) throws IOException {
+        int length = readVarInt(payload);
+        WireFormat.checkLength(length);
+        if (length > this.inflated.length) {
+            this.inflated = new byte[Math.max(length, this.inflated.length * 2)];
+        }
+        if (this.inflater == null) {
+            this.inflater = new Inflater();
+        }
+
+        if (payload.hasArray()) {
+            this.inflater.setInput(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        } else {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            this.inflater.setInput(bytes);
+        }
+        try {
+            int read = 0;
+            while (read < length) {
+                int count = this.inflater.inflate(this.inflated, read, length - read);
+                if (count == 0) {
+                    if (this.inflater.needsDictionary()) {
+                        this.inflater.setDictionary(WireFormat.DICTIONARY);
+                    } else if (this.inflater.finished() || this.inflater.needsInput()) {
+                        throw new IOException("Truncated compressed frame");
+                    }
+                }
+                read += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed compressed frame", e);
+        } finally {
+            this.inflater.reset();
+        }
+        return ByteBuffer.wrap(this.inflated, 0, length);
+    }
+
+    /**
+     * Find the length of the frame at the start of a buffer without
+     * consuming anything, for readers that can't block.
+     *
+     * @param buffer - the buffer, positioned at the start of a frame
+     * @return the payload length, or -1 if the length has not fully arrived
+     * @throws IOException if the length is malformed
+     */
+    public static int peekFrameLength(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        int at = buffer.position();
+        for (int shift = 0; shift < 7 * WireFormat.MAX_VARINT_SIZE; shift += 7) {
+            if (at >= buffer.limit()) {
+                return -1;
+            }
+            byte b = buffer.get(at++);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                WireFormat.checkLength(value);
+                return value;
+            }
+        }
+        throw new IOException("Malformed frame length");
+    }
+
+    /**
+     * @param length - the payload length of a frame
+     * @return the size of the length prefix in front of it
+     */
+    public static int headerSize(int length) {
+        return WireFormat.varIntSize(length);
+    }
+
+    /**
+     * Read a varint from a stream
+     *
+     * @param in - the stream
+     * @return the value
+     * @throws IOException if the stream ends or the varint is malformed
+     */
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 7 * WireFormat.MAX_VARINT_SIZE; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Read a varint from a buffer
+     *
+     * @param buffer - the buffer
+     * @return the value
+     * @throws IOException if the varint is malformed
+     */
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 7 * WireFormat.MAX_VARINT_SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Read a varint of a long from a buffer
+     *
+     * @param buffer - the buffer
+     * @return the value
+     * @throws IOException if the varint is malformed
+     */
+    private static long readVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 7 * WireFormat.MAX_VARLONG_SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Read the name of the room at the end of a payload
+     *
+     * @param buffer - the buffer
+     * @return the name of the room, or null for the default room
+     * @throws IOException if the name is malformed
+     */
+    private static String readRoom(ByteBuffer buffer) throws IOException {
+        return buffer.hasRemaining() ? readString(buffer) : null;
+    }
+
+    /**
+     * Read the username, timestamp and text of a message
+     *
+     * @param buffer - the buffer
+     * @return the message
+     * @throws IOException if the message is malformed
+     */
+    private static UserMessage readMessage(ByteBuffer buffer) throws IOException {
+        Users user = new Users(readString(buffer));
+        long time = buffer.getLong();
+        return new UserMessage(user, time, readString(buffer));
+    }
+
+    /**
+     * Read a string written as its UTF-8 length plus one, followed by its UTF-8 bytes
+     *
+     * @param buffer - the buffer
+     * @return the string, may be null
+     * @throws IOException if the string is malformed
+     */
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IOException("Truncated string");
+        }
+
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+}
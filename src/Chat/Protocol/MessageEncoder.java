@@ -0,0 +1,281 @@
+package Chat.Protocol;
+
+import Chat.ChatRoom;
+import Chat.HistoryPage;
+import Chat.HistoryRequest;
+import Chat.MessageRequest;
+import Chat.UserMessage;
+import Chat.Users;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes MessageRequests as compact binary frames (see WireFormat).
+ * <p>
+ * The encoder reuses its buffer from one request to the next, so it should
+ * only be used by one thread at a time.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class MessageEncoder {
+
+    /**
+     * The frame being encoded. The payload starts at MAX_VARINT_SIZE so the
+     * length can be written in front of it once it is known.
+     */
+    private byte[] buffer;
+
+    /**
+     * The end of the frame being encoded
+     */
+    private int position;
+
+    /**
+     * Where the frame being encoded starts in the buffer
+     */
+    private int start;
+
+    /**
+     * Create an encoder
+     */
+    public MessageEncoder() {
+        this.buffer = new byte[256];
+    }
+
+    /**
+     * Encode a request into a new buffer
+     *
+     * @param request - the request to be encoded
+     * @return a buffer holding the frame, ready to be written
+     * @throws IOException if the request can't be encoded
+     */
+    public ByteBuffer encode(MessageRequest<?> request) throws IOException {
+        encodeFrame(request);
+        return ByteBuffer.wrap(Arrays.copyOfRange(this.buffer, this.start, this.position));
+    }
+
+    /**
+     * Encode a request and write it to a stream. The stream is not flushed.
+     *
+     * @param request - the request to be written
+     * @param out     - the stream
+     * @throws IOException if the request can't be encoded or written
+     */
+    public void write(MessageRequest<?> request, OutputStream out) throws IOException {
+        encodeFrame(request);
+        out.write(this.buffer, this.start, this.position - this.start);
+    }
+
+    /**
+     * Encode a request into the buffer
+     *
+     * @param request - the request
+     * @throws IOException if the request can't be encoded
+     */
+    private void encodeFrame(MessageRequest<?> request) throws IOException {
+        this.position = WireFormat.MAX_VARINT_SIZE;
+        MessageRequest.RequestType type = request.getType();
+        ensureCapacity(1);
+        this.buffer[this.position++] = WireFormat.typeCode(type);
+
+        try {
+            switch (type) {
+                case LOGIN:
+                    Users user = (Users) request.getData();
+                    writeString(user.getUsername());
+                    if (user.getLastSeen() != null) {
+                        writeVarLong(user.getLastSeen() + 1);
+                    }
+                    break;
+                case SEND_MESSAGE:
+                    UserMessage sent = (UserMessage) request.getData();
+                    writeMessage(sent);
+                    writeRoom(sent.getRoom());
+                    break;
+                case MESSAGE_SENT:
+                    UserMessage message = (UserMessage) request.getData();
+                    writeMessage(message);
+                    writeVarLong(message.getSequence() + 1);
+                    writeRoom(message.getRoom());
+                    break;
+                case HISTORY_PAGE:
+                    HistoryPage page = (HistoryPage) request.getData();
+                    ensureCapacity(1);
+                    this.buffer[this.position++] = (byte) (page.isReplace() ? 1 : 0);
+                    writeVarLong(page.getOldest());
+                    writeVarLong(page.getFirst());
+                    writeVarInt(page.getMessages().size());
+                    for (UserMessage older : page.getMessages()) {
+                        writeMessage(older);
+                    }
+                    writeRoom(page.getRoom());
+                    break;
+                case REQUEST_HISTORY:
+                    HistoryRequest history = (HistoryRequest) request.getData();
+                    writeVarLong(history.getBefore());
+                    writeRoom(history.getRoom());
+                    break;
+                default:
+                    writeString((String) request.getData());
+                    break;
+            }
+        } catch (ClassCastException e) {
+            throw new IOException("Can't encode " + type + " with " + request.getData(), e);
+        }
+
+        // write the length in the space left in front of the payload
+        int length = this.position - WireFormat.MAX_VARINT_SIZE;
+        WireFormat.checkLength(length);
+        this.start = WireFormat.MAX_VARINT_SIZE - WireFormat.varIntSize(length);
+        int at = this.start;
+        while ((length & ~0x7F) != 0) {
+            this.buffer[at++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        this.buffer[at] = (byte) length;
+    }
+
+    /**
+     * Write the username, timestamp and text of a message
+     *
+     * @param message - the message
+     */
+    private void writeMessage(UserMessage message) {
+        writeString(message.getUsername());
+        writeLong(message.getTime());
+        writeString(message.getMessage());
+    }
+
+    /**
+     * Write the name of a room at the end of a payload, unless it is the default room
+     *
+     * @param room - the name of the room
+     */
+    private void writeRoom(String room) {
+        if (room != null && !room.equals(ChatRoom.DEFAULT_ROOM)) {
+            writeString(room);
+        }
+    }
+
+    /**
+     * Write a varint
+     *
+     * @param value - a non-negative int
+     */
+    private void writeVarInt(int value) {
+        ensureCapacity(WireFormat.MAX_VARINT_SIZE);
+        while ((value & ~0x7F) != 0) {
+            this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[this.position++] = (byte) value;
+    }
+
+    /**
+     * Write a varint of a long
+     *
+     * @param value - a non-negative long
+     */
+    private void writeVarLong(long value) {
+        ensureCapacity(WireFormat.MAX_VARLONG_SIZE);
+        while ((value & ~0x7FL) != 0) {
+            this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[this.position++] = (byte) value;
+    }
+
+    /**
+     * Write a 64-bit value, most significant byte first
+     *
+     * @param value - the value
+     */
+    private void writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            this.buffer[this.position++] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * Write a string as its UTF-8 length plus one, followed by its UTF-8 bytes.
+     * Unpaired surrogates are written as '?', the same as String.getBytes.
+     *
+     * @param value - the string, may be null
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+
+        int length = value.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (!Character.isSurrogate(c)) {
+                utf8Length += 3;
+            } else if (isSurrogatePair(value, i)) {
+                utf8Length += 4;
+                i++;
+            } else {
+                utf8Length++;
+            }
+        }
+
+        writeVarInt(utf8Length + 1);
+        ensureCapacity(utf8Length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                this.buffer[this.position++] = (byte) c;
+            } else if (c < 0x800) {
+                this.buffer[this.position++] = (byte) (0xC0 | (c >> 6));
+                this.buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                this.buffer[this.position++] = (byte) (0xE0 | (c >> 12));
+                this.buffer[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                this.buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (isSurrogatePair(value, i)) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                this.buffer[this.position++] = (byte) (0xF0 | (codePoint >> 18));
+                this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                this.buffer[this.position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                this.buffer[this.position++] = '?';
+            }
+        }
+    }
+
+    /**
+     * @param value - the string
+     * @param i     - the position of a surrogate
+     * @return true if a high surrogate at i is followed by a low surrogate
+     */
+    private static boolean isSurrogatePair(String value, int i) {
+        return Character.isHighSurrogate(value.charAt(i))
+                && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1));
+    }
+
+    /**
+     * Grow the buffer if needed
+     *
+     * @param needed - the number of bytes about to be written
+     */
+    private void ensureCapacity(int needed) {
+        if (this.position + needed > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + needed));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package Chat.Protocol;
+
+import Chat.MessageRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants shared by the MessageEncoder and MessageDecoder.
+ * <p>
+ * Every frame is a varint length followed by that many bytes of payload.
+ * The payload starts with a single byte for the request type, followed by
+ * the fields of the request:
+ * <ul>
+ * <li>LOGIN - the username, then (version 2) a varint of the last seen
+ * sequence plus one, if the client has one</li>
+ * <li>SEND_MESSAGE - the username, a 64-bit timestamp and the message, then
+ * (version 3) the room, if it isn't the default room</li>
+ * <li>MESSAGE_SENT - the same as SEND_MESSAGE, then (version 2) a varint of
+ * the message's sequence plus one and (version 3) the room, if it isn't
+ * the default room</li>
+ * <li>HISTORY_PAGE (version 2) - a byte that is 1 if the page replaces the
+ * client's chat, varints of the oldest sequence on the server, the sequence
+ * of the first message and the number of messages, then each message's
+ * username, timestamp and text, then (version 3) the room, if it isn't the
+ * default room</li>
+ * <li>REQUEST_HISTORY (version 2) - a varint of the sequence the page should
+ * end before, then (version 3) the room, if it isn't the default room</li>
+ * <li>everything else, including JOIN_ROOM and LEAVE_ROOM (version 3) - a single string</li>
+ * </ul>
+ * From version 4 the server may send any payload compressed instead: the
+ * COMPRESSED code, a varint of the payload's length, then the payload as a
+ * zlib stream deflated with DICTIONARY as its preset dictionary.
+ * Strings are a varint of their UTF-8 length plus one (zero for null)
+ * followed by their UTF-8 bytes. Fields added in later versions go at the
+ * end of a payload, where an older decoder doesn't look.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+final class WireFormat {
+
+    /**
+     * The largest frame that will be accepted
+     */
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The most bytes a varint of an int can take
+     */
+    static final int MAX_VARINT_SIZE = 5;
+
+    /**
+     * The most bytes a varint of a long can take
+     */
+    static final int MAX_VARLONG_SIZE = 10;
+
+    /**
+     * The code in front of a compressed payload, in place of a request type
+     */
+    static final byte COMPRESSED = 13;
+
+    /**
+     * The preset dictionary of compressed payloads: words that are common
+     * in chat, so that even short payloads have something to refer back to.
+     * The most common ones are at the end, where they take the fewest bits
+     * to refer to. Part of version 4 of the protocol, it must never change.
+     */
+    static final byte[] DICTIONARY = ("main joined left room history welcome sorry please thanks thank "
+            + "really think about would could should there their they what when where which right going "
+            + "good great nice cool okay yeah haha lol hello hey you your have this that with just like "
+            + "know not but and the ").getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Not used, all methods are static
+     */
+    private WireFormat() {
+    }
+
+    /**
+     * Get the byte a request type is written as
+     *
+     * @param type - the request type
+     * @return the byte for the type
+     */
+    static byte typeCode(MessageRequest.RequestType type) {
+        switch (type) {
+            case CHAT_ROOM:
+                return 1;
+            case SEND_MESSAGE:
+                return 2;
+            case ERROR:
+                return 3;
+            case LOGIN:
+                return 4;
+            case LOGIN_SUCCESS:
+                return 5;
+            case MESSAGE_SENT:
+                return 6;
+            case INVALID_USERNAME:
+                return 7;
+            case USER_ALREADY_EXISTS:
+                return 8;
+            case HISTORY_PAGE:
+                return 9;
+            case REQUEST_HISTORY:
+                return 10;
+            case JOIN_ROOM:
+                return 11;
+            case LEAVE_ROOM:
+                return 12;
+            default:
+                throw new IllegalArgumentException("No type code for " + type);
+        }
+    }
+
+    /**
+     * Get the request type a byte stands for
+     *
+     * @param code - the byte read off the wire
+     * @return the request type
+     * @throws IOException if the byte is not a known type
+     */
+    static MessageRequest.RequestType requestType(int code) throws IOException {
+        switch (code) {
+            case 1:
+                return MessageRequest.RequestType.CHAT_ROOM;
+            case 2:
+                return MessageRequest.RequestType.SEND_MESSAGE;
+            case 3:
+                return MessageRequest.RequestType.ERROR;
+            case 4:
+                return MessageRequest.RequestType.LOGIN;
+            case 5:
+                return MessageRequest.RequestType.LOGIN_SUCCESS;
+            case 6:
+                return MessageRequest.RequestType.MESSAGE_SENT;
+            case 7:
+                return MessageRequest.RequestType.INVALID_USERNAME;
+            case 8:
+                return MessageRequest.RequestType.USER_ALREADY_EXISTS;
+            case 9:
+                return MessageRequest.RequestType.HISTORY_PAGE;
+            case 10:
+                return MessageRequest.RequestType.REQUEST_HISTORY;
+            case 11:
+                return MessageRequest.RequestType.JOIN_ROOM;
+            case 12:
+                return MessageRequest.RequestType.LEAVE_ROOM;
+            default:
+                throw new IOException("Unknown request type: " + code);
+        }
+    }
+
+    /**
+     * Make sure a frame length read off the wire is sensible
+     *
+     * @param length - the length of the frame
+     * @throws IOException if it is not
+     */
+    static void checkLength(int length) throws IOException {
+        if (length < 1 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+
+    /**
+     * @param value - a non-negative int
+     * @return the number of bytes the value takes as a varint
+     */
+    static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,114 @@
+package Chat.Protocol;
+
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * How a side of a connection coalesces the frames it writes.
+ * <p>
+ * Rather than flushing every frame as its own write (its own syscall and
+ * TCP segment), a writer keeps collecting the frames that are queued within
+ * a short linger window, up to a number of frames, and flushes them all at
+ * once. Because the writer does the coalescing itself, Nagle's algorithm is
+ * switched off by default, so a flushed batch goes out straight away rather
+ * than waiting on the peer's delayed ACK.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public final class WriteBatching {
+
+    /**
+     * Default time a writer waits for more frames before flushing, in microseconds
+     */
+    public static final long DEFAULT_LINGER = 1000;
+
+    /**
+     * Default most frames written in a single flush
+     */
+    public static final int DEFAULT_MAX_FRAMES = 64;
+
+    /**
+     * Default size of the socket's send and receive buffers, in bytes
+     */
+    public static final int DEFAULT_SOCKET_BUFFER = 64 * 1024;
+
+    /**
+     * The default batching, used by both the client and the server
+     */
+    public static final WriteBatching DEFAULT =
+            new WriteBatching(DEFAULT_LINGER, DEFAULT_MAX_FRAMES, true, DEFAULT_SOCKET_BUFFER);
+
+    /**
+     * The time a writer waits for more frames before flushing, in nanoseconds
+     */
+    private final long lingerNanos;
+
+    /**
+     * The most frames written in a single flush
+     */
+    private final int maxFrames;
+
+    /**
+     * true to switch off Nagle's algorithm
+     */
+    private final boolean tcpNoDelay;
+
+    /**
+     * The size of the socket's send and receive buffers in bytes, 0 to leave the system default
+     */
+    private final int socketBuffer;
+
+    /**
+     * Create the batching
+     *
+     * @param linger       - the time a writer waits for more frames before flushing, in microseconds, 0 to not wait
+     * @param maxFrames    - the most frames written in a single flush
+     * @param tcpNoDelay   - true to switch off Nagle's algorithm
+     * @param socketBuffer - the size of the socket's send and receive buffers in bytes, 0 to leave the system default
+     */
+    public WriteBatching(long linger, int maxFrames, boolean tcpNoDelay, int socketBuffer) {
+        if (linger < 0 || maxFrames < 1 || socketBuffer < 0) {
+            throw new IllegalArgumentException("Write batching settings must not be negative.");
+        }
+        this.lingerNanos = linger * 1000;
+        this.maxFrames = maxFrames;
+        this.tcpNoDelay = tcpNoDelay;
+        this.socketBuffer = socketBuffer;
+    }
+
+    /**
+     * Set the socket options of a connection
+     *
+     * @param socket - the socket
+     * @throws SocketException if an option could not be set
+     */
+    public void configure(Socket socket) throws SocketException {
+        socket.setTcpNoDelay(this.tcpNoDelay);
+        if (this.socketBuffer > 0) {
+            socket.setSendBufferSize(this.socketBuffer);
+            socket.setReceiveBufferSize(this.socketBuffer);
+        }
+    }
+
+    /**
+     * @return the time a writer waits for more frames before flushing, in nanoseconds
+     */
+    public long getLingerNanos() {
+        return this.lingerNanos;
+    }
+
+    /**
+     * @return the most frames written in a single flush
+     */
+    public int getMaxFrames() {
+        return this.maxFrames;
+    }
+
+    @Override
+    public String toString() {
+        return "linger=" + this.lingerNanos / 1000 + "us maxFrames=" + this.maxFrames
+                + " tcpNoDelay=" + this.tcpNoDelay + " socketBuffer=" + this.socketBuffer;
+    }
+}
@@ -0,0 +1,63 @@
+package Chat.Server;
+
+import Chat.Protocol.Handshake;
+import Chat.Protocol.WriteBatching;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Connection to a client that speaks the binary protocol and is served by
+ * its own ServerThread.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+class BinaryStreamConnection extends StreamConnection {
+
+    /**
+     * the (buffered) stream to the client
+     **/
+    private final OutputStream out;
+
+    /**
+     * true if the client can read compressed frames
+     */
+    private final boolean compressed;
+
+    /**
+     * Create the connection
+     *
+     * @param socket     - the socket
+     * @param out        - the buffered stream to the client
+     * @param queue      - the queue requests wait in
+     * @param batching   - how the writer coalesces requests
+     * @param metrics    - the server's metrics
+     * @param events     - the server's event log
+     * @param version    - the protocol version agreed in the handshake
+     */
+    BinaryStreamConnection(Socket socket, OutputStream out, OutboundQueue queue, WriteBatching batching,
+                           ServerMetrics metrics, EventLog events, int version) {
+        super(socket, queue, batching, metrics, events);
+        this.out = out;
+        this.compressed = version >= Handshake.COMPRESSION_VERSION;
+    }
+
+    /**
+     * Write the shared frame of a request
+     *
+     * @param request - the request
+     * @throws IOException if the request could not be written
+     */
+    @Override
+    void write(EncodedRequest request) throws IOException {
+        request.writeFrame(this.out, this.compressed);
+    }
+
+    @Override
+    void flush() throws IOException {
+        this.out.flush();
+    }
+}
@@ -0,0 +1,468 @@
+package Chat.Server;
+
+import Chat.MessageRequest;
+import Chat.Protocol.Handshake;
+import Chat.Protocol.MessageDecoder;
+import Chat.Protocol.WriteBatching;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Connection to a client that is served by an EventLoop. Nothing in here
+ * blocks: incoming bytes are collected until a whole frame has arrived, and
+ * outgoing frames wait in an OutboundQueue until the socket is ready to
+ * take them. Every frame that is queued when the socket is ready, up to
+ * the most frames for a flush, goes out in a single gathering write.
+ * <p>
+ * Clients that send serialized objects instead of binary frames are handed
+ * off to a ServerThread of their own once the handshake tells them apart.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+class ChannelConnection implements ClientConnection {
+
+    /**
+     * Starting size of the buffer incoming frames are collected in
+     */
+    private static final int INITIAL_READ_BUFFER = 4096;
+
+    /**
+     * The largest frame a client that hasn't signed in may send, enough for a LOGIN.
+     * Keeps the buffer from growing before the client is known.
+     */
+    private static final int MAX_SIGN_IN_FRAME = 1024;
+
+    /**
+     * The largest frame a signed in client may send, well above the
+     * largest message (see MessageSizes.MAX_SIZE)
+     */
+    private static final int MAX_FRAME = 256 * 1024;
+
+    /**
+     * The channel that connects to the client
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The client's address, kept so it can still be logged once the channel is closed
+     */
+    private final SocketAddress remoteAddress;
+
+    /**
+     * The event loop this connection is registered with
+     */
+    private final EventLoop loop;
+
+    /**
+     * Handshake bytes waiting to be written to the client, ahead of any frames
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> handshakeBytes;
+
+    /**
+     * Requests waiting to be written to the client
+     */
+    private final OutboundQueue outbound;
+
+    /**
+     * The bytes of the batch being written, from batchStart up to batchEnd
+     */
+    private final ByteBuffer[] batch;
+
+    /**
+     * The first buffer of the batch that hasn't been written in full
+     */
+    private int batchStart;
+
+    /**
+     * The number of buffers in the batch, 0 when there is no batch being written
+     */
+    private int batchEnd;
+
+    /**
+     * The server's metrics, which count the frames written in each batch,
+     * the bytes read and written and the time the socket is full
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * Where the connection reports a client that reads too slowly
+     */
+    private final EventLog events;
+
+    /**
+     * When the socket filled up with part of a batch still to write, as a
+     * System.nanoTime(), or 0 if it isn't full
+     */
+    private long stalledSince;
+
+    /**
+     * Set while the event loop has been asked to watch for the socket becoming writable
+     */
+    private final AtomicBoolean writeRequested;
+
+    /**
+     * Turns frames into requests
+     */
+    private final MessageDecoder decoder;
+
+    /**
+     * The session that handles the requests from the client
+     */
+    private ServerThread session;
+
+    /**
+     * The key of the channel in the event loop's selector
+     */
+    private SelectionKey key;
+
+    /**
+     * Collects the bytes of incoming frames
+     */
+    private ByteBuffer inbound;
+
+    /**
+     * The protocol version agreed in the handshake, REJECTED until then
+     */
+    private int version;
+
+    /**
+     * true once the channel should be closed as soon as the queued frames are written
+     */
+    private boolean closeWhenWritten;
+
+    /**
+     * true once the connection has been closed or handed off
+     */
+    private volatile boolean closed;
+
+    /**
+     * Create the connection
+     *
+     * @param channel  - the channel of the client
+     * @param loop     - the event loop serving the channel
+     * @param queue    - the queue requests wait in
+     * @param batching - the most frames written in a single batch
+     * @param metrics  - the server's metrics
+     * @param events   - the server's event log
+     */
+    ChannelConnection(SocketChannel channel, EventLoop loop, OutboundQueue queue, WriteBatching batching,
+                      ServerMetrics metrics, EventLog events) {
+        this.channel = channel;
+        this.remoteAddress = channel.socket().getRemoteSocketAddress();
+        this.loop = loop;
+        this.handshakeBytes = new ConcurrentLinkedQueue<>();
+        this.outbound = queue;
+        this.batch = new ByteBuffer[batching.getMaxFrames()];
+        this.metrics = metrics;
+        this.events = events;
+        this.writeRequested = new AtomicBoolean(false);
+        this.decoder = new MessageDecoder(false);
+        this.inbound = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        this.version = Handshake.REJECTED;
+    }
+
+    /**
+     * Attach the session and the selection key once the channel is registered,
+     * and greet the client.
+     *
+     * @param session - the session handling the client's requests
+     * @param key     - the selection key of the channel
+     */
+    void attach(ServerThread session, SelectionKey key) {
+        this.session = session;
+        this.key = key;
+        this.handshakeBytes.add(ByteBuffer.wrap(Handshake.GREETING.clone()));
+        requestWrite();
+    }
+
+    /**
+     * Queue a request to be written to the client. May be called from any
+     * thread. If the client has fallen too far behind, they are disconnected
+     * instead.
+     *
+     * @param request - the shared request to be sent
+     */
+    @Override
+    public void send(EncodedRequest request) {
+        send(request, null);
+    }
+
+    /**
+     * Queue one of a room's messages to be written to the client. If the
+     * client has fallen too far behind and can't be resynced, they are
+     * disconnected instead.
+     *
+     * @param request - the shared request to be sent
+     * @param resync  - builds the request that brings the client up to date with the room
+     */
+    @Override
+    public void send(EncodedRequest request, Supplier<EncodedRequest> resync) {
+        if (this.closed) {
+            return;
+        }
+        if (this.outbound.offer(request, resync)) {
+            requestWrite();
+        } else {
+            this.events.log(EventLog.Type.SLOW_CONSUMER, null, this.remoteAddress,
+                    this.outbound.getMaxDepth(), this.outbound.getDropped());
+            this.loop.execute(this::disconnected);
+        }
+    }
+
+    /**
+     * Ask the event loop to write to the channel, unless it has already been asked
+     */
+    private void requestWrite() {
+        if (this.writeRequested.compareAndSet(false, true)) {
+            this.loop.requestWrite(this);
+        }
+    }
+
+    /**
+     * @return the queue requests wait in
+     */
+    @Override
+    public OutboundQueue getOutboundQueue() {
+        return this.outbound;
+    }
+
+    /**
+     * Read whatever the client has sent and handle every complete frame.
+     * Called by the event loop when the channel is readable.
+     *
+     * @throws IOException if the channel could not be read
+     */
+    void onReadable() throws IOException {
+        int read = this.channel.read(this.inbound);
+        if (read < 0) {
+            disconnected();
+            return;
+        }
+        this.metrics.bytesIn(read);
+
+        this.inbound.flip();
+        if (this.version == Handshake.REJECTED && !handshake()) {
+            if (!this.closed) {
+                this.inbound.compact();
+            }
+            return;
+        }
+
+        int length;
+        int needed = 0;
+        while ((length = MessageDecoder.peekFrameLength(this.inbound)) >= 0) {
+            int limit = this.session.isSignedIn() ? MAX_FRAME : MAX_SIGN_IN_FRAME;
+            if (length > limit) {
+                throw new IOException("Frame of " + length + " bytes is larger than " + limit);
+            }
+            int header = MessageDecoder.headerSize(length);
+            if (this.inbound.remaining() < header + length) {
+                needed = header + length;
+                break;
+            }
+
+            this.inbound.position(this.inbound.position() + header);
+            ByteBuffer payload = this.inbound.slice();
+            payload.limit(length);
+            this.inbound.position(this.inbound.position() + length);
+
+            MessageRequest<?> request = this.decoder.decode(payload);
+            this.session.handleMessageRequest(request);
+            if (this.closed) {
+                return;
+            }
+
+            // same as the ServerThread loop, stop reading and hang up once the client is not signed in
+            if (!this.session.isSignedIn()) {
+                closeWhenWritten();
+                return;
+            }
+        }
+        this.inbound.compact();
+
+        // make room for a frame that is bigger than the buffer, and give the room back once it has been read
+        int capacity = Math.max(INITIAL_READ_BUFFER, needed);
+        if (capacity != this.inbound.capacity()) {
+            ByteBuffer resized = ByteBuffer.allocate(capacity);
+            this.inbound.flip();
+            resized.put(this.inbound);
+            this.inbound = resized;
+        }
+    }
+
+    /**
+     * Run the server's side of the Handshake with what has been read so far
+     *
+     * @return true once the client has agreed on a version of the binary protocol
+     */
+    private boolean handshake() {
+        if (this.inbound.remaining() < 2) {
+            return false;
+        }
+
+        int first = this.inbound.get(this.inbound.position()) & 0xFF;
+        int second = this.inbound.get(this.inbound.position() + 1) & 0xFF;
+        if (Handshake.isLegacy(first, second)) {
+            // hand everything read so far, starting with the object stream header, to a ServerThread
+            byte[] received = new byte[this.inbound.remaining()];
+            this.inbound.get(received);
+            this.closed = true;
+            this.key.cancel();
+            this.loop.handOff(this.channel, this.handshakeBytes, received);
+            return false;
+        }
+        if (!Handshake.isHello(first, second)) {
+            close();
+            return false;
+        }
+        if (this.inbound.remaining() < Handshake.HELLO.length + 1) {
+            return false;
+        }
+
+        this.inbound.position(this.inbound.position() + Handshake.HELLO.length);
+        this.version = Handshake.accept(this.inbound.get() & 0xFF);
+        this.handshakeBytes.add(ByteBuffer.wrap(new byte[]{(byte) this.version}));
+        requestWrite();
+        if (this.version == Handshake.REJECTED) {
+            this.closeWhenWritten = true;
+            this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_READ);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write as many queued frames as the socket will take. Called by the
+     * event loop when the channel is writable.
+     *
+     * @throws IOException if the channel could not be written to
+     */
+    void onWritable() throws IOException {
+        if (this.stalledSince != 0) {
+            this.metrics.writeStalled(System.nanoTime() - this.stalledSince);
+            this.stalledSince = 0;
+        }
+        while (this.batchEnd > 0 || nextBatch() > 0) {
+            this.metrics.bytesOut(this.channel.write(this.batch, this.batchStart, this.batchEnd - this.batchStart));
+            while (this.batchStart < this.batchEnd && !this.batch[this.batchStart].hasRemaining()) {
+                this.batch[this.batchStart++] = null;
+            }
+            if (this.batchStart < this.batchEnd) {
+                // the socket is full, wait until it is writable again
+                this.stalledSince = System.nanoTime();
+                return;
+            }
+            this.batchStart = 0;
+            this.batchEnd = 0;
+        }
+
+        if (this.closeWhenWritten) {
+            close();
+            return;
+        }
+
+        this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_WRITE);
+        this.writeRequested.set(false);
+
+        // a frame may have been queued after the queue was seen empty
+        if ((!this.handshakeBytes.isEmpty() || this.outbound.getDepth() > 0)
+                && this.writeRequested.compareAndSet(false, true)) {
+            enableWrite();
+        }
+    }
+
+    /**
+     * Fill the batch with the next bytes to write to the client: the
+     * handshake bytes if there are any, otherwise the queued frames
+     *
+     * @return the number of buffers in the batch, 0 if there is nothing to write
+     * @throws IOException if the next request can't be encoded
+     */
+    private int nextBatch() throws IOException {
+        ByteBuffer bytes;
+        while (this.batchEnd < this.batch.length && (bytes = this.handshakeBytes.poll()) != null) {
+            this.batch[this.batchEnd++] = bytes;
+        }
+        if (this.batchEnd > 0) {
+            return this.batchEnd;
+        }
+
+        EncodedRequest request;
+        while (this.batchEnd < this.batch.length && (request = this.outbound.poll()) != null) {
+            this.batch[this.batchEnd++] = request.frame(this.version >= Handshake.COMPRESSION_VERSION);
+        }
+        if (this.batchEnd > 0) {
+            this.metrics.getFlushStats().record(this.batchEnd);
+        }
+        return this.batchEnd;
+    }
+
+    /**
+     * Start watching for the socket becoming writable. Called on the event loop.
+     */
+    void enableWrite() {
+        if (this.key.isValid()) {
+            this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * The client has gone away, sign them out and close the channel
+     */
+    void disconnected() {
+        if (!this.closed) {
+            this.session.signedOut();
+            close();
+        }
+    }
+
+    /**
+     * Stop reading and close the channel once everything queued has been
+     * written. Called on the event loop.
+     */
+    @Override
+    public void closeWhenWritten() {
+        if (this.closed) {
+            return;
+        }
+        this.closeWhenWritten = true;
+        this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_READ);
+        requestWrite();
+    }
+
+    /**
+     * Close the channel
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.outbound.close();
+        if (this.key != null) {
+            this.key.cancel();
+        }
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return this.remoteAddress;
+    }
+
+    @Override
+    public String toString() {
+        return this.channel.socket().toString();
+    }
+}
@@ -1,191 +1,774 @@
 package Chat.Server;
 
 import Chat.ChatRoom;
+import Chat.HistoryPage;
+import Chat.MessageProtocol;
 import Chat.MessageRequest;
 import Chat.UserMessage;
 
+import Chat.Protocol.FlushStats;
+import Chat.Protocol.Handshake;
+import Chat.Protocol.MessageDecoder;
+import Chat.Protocol.WriteBatching;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
- * Multithreaded server that allows for multiple client usage
+ * Multithreaded server that allows for multiple client usage.
+ * <p>
+ * By default every client is served by a thread of its own. Starting the
+ * server with --virtual runs each of those sessions on a virtual thread
+ * instead. Starting it with --nio serves the clients from a few event loop
+ * threads, and --threads sets how many (the number of cores by default).
+ * <p>
+ * Messages are sent to named rooms. Each room is handled by one of a fixed
+ * pool of workers, chosen by the hash of its name, so every room's messages
+ * stay in order while the rooms are spread over the cores. --workers sets
+ * how many workers there are (the number of cores by default). A room is
+ * opened, and its journal replayed, on its worker when it is first used, and
+ * closed once it has been empty and quiet for ROOM_IDLE_TIME. A user can be
+ * in at most MAX_ROOMS_PER_USER rooms.
+ * <p>
+ * Several servers can share their rooms as a cluster (see ClusterNode):
+ * start each with --node and its id, and --cluster listing every node as
+ * id@host:port, where port is the port the nodes link to each other on.
+ * Nodes only accept links from nodes that know the secret given with
+ * --cluster-secret, or in the PARTYCHAT_CLUSTER_SECRET environment variable.
+ * --port sets the port clients connect to.
+ * <p>
+ * Writes to clients are coalesced: --linger sets how many microseconds a
+ * writer waits for more requests before flushing, --batch the most requests
+ * in one flush, --socket-buffer the size of each socket's buffers and --nagle
+ * leaves Nagle's algorithm on. How many requests went out per flush is
+ * printed when the server shuts down.
+ * <p>
+ * The server keeps ServerMetrics: sessions, sign ins, messages and bytes in
+ * and out, how long messages and writes take, and how far behind the users
+ * with the deepest OutboundQueues are. They can be read through
+ * JMX, and --metrics-port serves them as plain text at /metrics on that
+ * port of the loopback address.
+ * <p>
+ * Connections, sign ins and sign outs are written to the console through
+ * an EventLog, so accepting and signing in clients never waits on the
+ * console. --log-size sets the size of its ring and --log-overflow whether
+ * events are dropped or wait when the ring is full.
  *
  * @author Samuel Tregea
  * <p>
- * Last Date Modified: January 2, 2019
+ * Last Date Modified: October 18, 2026
  */
 public class ChatServer {
 
     /**
-     * The ChatRoom users will interact with
+     * The port the server listens on
+     */
+    public static final int PORT = 12345;
+
+    /**
+     * The most rooms the server will hold
+     */
+    public static final int MAX_ROOMS = 1024;
+
+    /**
+     * The most rooms a user can be in at once, the default room included
+     */
+    public static final int MAX_ROOMS_PER_USER = 16;
+
+    /**
+     * How long a room must be without members or messages before it is
+     * closed, in milliseconds. The default room is never closed.
+     */
+    public static final long ROOM_IDLE_TIME = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The time between looking for idle rooms, in milliseconds
+     */
+    private static final long ROOM_SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The most connections that may wait to be accepted. The server speaks
+     * first, so a client the kernel drops from a full queue would wait for
+     * the greeting forever; this is high enough for a burst of thousands of
+     * clients connecting at once (the kernel may cap it lower).
      */
-    private static ChatRoom chatRoom;
+    static final int ACCEPT_BACKLOG = 4096;
 
     /**
-     * HashMap that will contain the names of all users and their OutputStreams.
+     * The rooms users will interact with, by name
+     */
+    private static ConcurrentHashMap<String, Room> rooms;
+
+    /**
+     * Registry that will contain the sessions of all signed in users.
      * <p>
      * This will allow for all the clients to receive updated messages of the board.
      */
-    private static HashMap<String, ObjectOutputStream> activeUsers;
+    private static SessionRegistry activeUsers;
     /**
      * flag to tell the server to continue running
      **/
     private static boolean isRunning;
     /**
-     * Queue that will be used for incoming messages
+     * Each puts the incoming messages, and the users joining, of its rooms
+     * in order and hands them to a thread of its own that adds them to the
+     * rooms and sends them out
      **/
-    private ConcurrentLinkedQueue<MessageRequest> message_queue;
+    private final List<MessageSequencer<Runnable>> workers;
+    /**
+     * The most requests that can wait to be written to a client
+     */
+    private final int queueCapacity;
+    /**
+     * What to do when a client falls too far behind
+     */
+    private final OverflowPolicy overflowPolicy;
+    /**
+     * The cluster the rooms are shared with, null if the server runs on its own
+     */
+    private final ClusterNode cluster;
+    /**
+     * How requests to clients are coalesced, and the clients' socket options
+     */
+    private final WriteBatching writeBatching;
     /**
-     * Flag to tell the message queue that it is ready to read
-     * the next message
+     * The server's counters and histograms
      */
-    private boolean messageReady;
+    private final ServerMetrics metrics;
+    /**
+     * Where connections, sign ins and sign outs are logged
+     */
+    private final EventLog events;
+    /**
+     * The directory the rooms' journals are in, null if messages aren't saved
+     */
+    private final File journalDirectory;
+    /**
+     * Forces every room's journal to the disk, null if every append is forced
+     */
+    private final JournalFlusher journalFlusher;
 
     /**
-     * Instantiate the data members
+     * Instantiate the data members and the default room
+     *
+     * @param queueCapacity    - the most requests that can wait to be written to a client
+     * @param overflowPolicy   - what to do when a client falls too far behind
+     * @param workers          - the number of workers the rooms are spread over
+     * @param journalDirectory - the directory the rooms' journals are in, null if messages aren't saved
+     * @param fsyncInterval    - the time between forcing the journals to the disk, in milliseconds
+     * @param cluster          - the cluster the rooms are shared with, null if the server runs on its own
+     * @param writeBatching    - how requests to clients are coalesced
+     * @param events           - where connections, sign ins and sign outs are logged
      */
-    private ChatServer() {
-        chatRoom = new ChatRoom();
-        activeUsers = new HashMap<>();
-        message_queue = new ConcurrentLinkedQueue<>();
+    @SuppressWarnings("unchecked")
+    ChatServer(int queueCapacity, OverflowPolicy overflowPolicy, int workers, File journalDirectory,
+               long fsyncInterval, ClusterNode cluster, WriteBatching writeBatching, EventLog events) {
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.cluster = cluster;
+        this.writeBatching = writeBatching;
+        this.events = events;
+        this.journalDirectory = journalDirectory;
+        this.journalFlusher = journalDirectory != null && fsyncInterval > 0 ? new JournalFlusher(fsyncInterval) : null;
+        rooms = new ConcurrentHashMap<>();
+        activeUsers = new SessionRegistry();
+        this.metrics = new ServerMetrics(activeUsers::size, activeUsers::sessions);
         isRunning = true;
-        this.messageReady = true;
+
+        this.workers = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            this.workers.add(new MessageSequencer<>("room-worker-" + i, MessageSequencer.DEFAULT_SIZE, Runnable::run));
+        }
+        getRoom(ChatRoom.DEFAULT_ROOM);
+
+        Thread sweeper = new Thread(this::sweepRooms, "room-sweeper");
+        sweeper.setDaemon(true);
+        sweeper.start();
     }
 
     /**
      * Run the server!
      *
-     * @param args - not used
+     * @param args - [--legacy | --virtual | --nio] [--threads count]
+     *             [--queue-size count] [--overflow drop-oldest | disconnect | resync]
+     *             [--journal directory] [--fsync-interval milliseconds] [--workers count]
+     *             [--port port] [--node id --cluster id@host:port,... [--cluster-secret secret]]
+     *             [--linger microseconds] [--batch count] [--socket-buffer bytes] [--nagle]
+     *             [--metrics-port port] [--log-size count] [--log-overflow block | drop]
      */
     public static void main(String[] args) {
+        String mode = "--legacy";
+        int threads = Runtime.getRuntime().availableProcessors();
+        int workers = Runtime.getRuntime().availableProcessors();
+        int port = PORT;
+        int node = -1;
+        String cluster = null;
+        String clusterSecret = System.getenv("PARTYCHAT_CLUSTER_SECRET");
+        int queueCapacity = OutboundQueue.DEFAULT_CAPACITY;
+        OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+        File journalDirectory = null;
+        long fsyncInterval = MessageJournal.DEFAULT_FSYNC_INTERVAL;
+        long linger = WriteBatching.DEFAULT_LINGER;
+        int batch = WriteBatching.DEFAULT_MAX_FRAMES;
+        int socketBuffer = WriteBatching.DEFAULT_SOCKET_BUFFER;
+        boolean tcpNoDelay = true;
+        int metricsPort = -1;
+        int logSize = EventLog.DEFAULT_SIZE;
+        boolean dropLogEvents = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--legacy":
+                case "--virtual":
+                case "--nio":
+                    mode = args[i];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--queue-size":
+                    queueCapacity = Integer.parseInt(args[++i]);
+                    break;
+                case "--overflow":
+                    overflowPolicy = OverflowPolicy.valueOf(args[++i].toUpperCase().replace('-', '_'));
+                    break;
+                case "--journal":
+                    journalDirectory = new File(args[++i]);
+                    break;
+                case "--fsync-interval":
+                    fsyncInterval = Long.parseLong(args[++i]);
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(args[++i]);
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--node":
+                    node = Integer.parseInt(args[++i]);
+                    break;
+                case "--cluster":
+                    cluster = args[++i];
+                    break;
+                case "--cluster-secret":
+                    clusterSecret = args[++i];
+                    break;
+                case "--linger":
+                    linger = Long.parseLong(args[++i]);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(args[++i]);
+                    break;
+                case "--socket-buffer":
+                    socketBuffer = Integer.parseInt(args[++i]);
+                    break;
+                case "--nagle":
+                    tcpNoDelay = false;
+                    break;
+                case "--metrics-port":
+                    metricsPort = Integer.parseInt(args[++i]);
+                    break;
+                case "--log-size":
+                    logSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--log-overflow":
+                    dropLogEvents = args[++i].equalsIgnoreCase("drop");
+                    break;
+                default:
+                    System.err.println("Usage: ChatServer [--legacy | --virtual | --nio] [--threads count]"
+                            + " [--queue-size count] [--overflow drop-oldest | disconnect | resync]"
+                            + " [--journal directory] [--fsync-interval milliseconds] [--workers count]"
+                            + " [--port port] [--node id --cluster id@host:port,... [--cluster-secret secret]]"
+                            + " [--linger microseconds] [--batch count] [--socket-buffer bytes] [--nagle]"
+                            + " [--metrics-port port] [--log-size count] [--log-overflow block | drop]");
+                    return;
+            }
+        }
 
         try {
-            ServerSocket serverSocket = new ServerSocket(12345);
-            ChatServer server = new ChatServer();
-            System.out.println("The server is listening...");
-            while (isRunning) {
-                Socket socket = null;
+            ClusterNode clusterNode = cluster == null ? null : ClusterNode.parse(node, cluster, clusterSecret);
+            WriteBatching writeBatching = new WriteBatching(linger, batch, tcpNoDelay, socketBuffer);
+            EventLog events = new EventLog(logSize, dropLogEvents, System.out);
+            ChatServer server = new ChatServer(queueCapacity, overflowPolicy, workers, journalDirectory, fsyncInterval,
+                    clusterNode, writeBatching, events);
+            server.getMetrics().register();
+            if (metricsPort >= 0) {
+                MetricsEndpoint.start(server.getMetrics(), metricsPort);
+            }
+            if (clusterNode != null) {
+                clusterNode.start(server);
+            }
+            // force what is left of the journals to the disk on the way out
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.closeRooms();
+                events.close(1000);
+                System.out.println("Writes to clients: " + server.getFlushStats());
+                if (events.getDropped() > 0) {
+                    System.out.println("Log events dropped: " + events.getDropped());
+                }
+            }));
+            switch (mode) {
+                case "--nio":
+                    new SelectorServer(server, threads).listen(port);
+                    break;
+                case "--virtual":
+                    server.listen(port, SessionExecutors.virtualThreadPerTask());
+                    break;
+                default:
+                    server.listen(port, SessionExecutors.threadPerTask());
+                    break;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-                try {
-                    // socket object to receive incoming client requests
-                    socket = serverSocket.accept();
+    /**
+     * Accept clients and run a session to handle each one
+     *
+     * @param port     - the port to listen on
+     * @param sessions - runs each client's session on a thread of its own
+     * @throws IOException if the port could not be listened on
+     */
+    private void listen(int port, Executor sessions) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(port, ACCEPT_BACKLOG);
+        System.out.println("The server is listening...");
+        while (isRunning) {
+            // socket object to receive incoming client requests
+            Socket socket = serverSocket.accept();
 
-                    System.out.println("A new client is connected : " + socket.toString());
+            this.events.log(EventLog.Type.CONNECTED, null, socket.getRemoteSocketAddress());
 
-                    ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            // the streams are opened by the session so a slow client can't hold up accept()
+            sessions.execute(() -> serve(socket, sessions));
+        }
+    }
 
-                    ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+    /**
+     * Run the handshake with the client and then their session, on the calling thread
+     *
+     * @param socket  - the socket connected to the client
+     * @param writers - runs the writer of the client's connection
+     */
+    private void serve(Socket socket, Executor writers) {
+        try {
+            this.writeBatching.configure(socket);
+            OutputStream out = new BufferedOutputStream(this.metrics.meter(socket.getOutputStream()));
+            out.write(Handshake.GREETING);
+            out.flush();
 
-                    // create a new thread to handle client
-                    new ServerThread(socket,out,in,server).start();
+            PushbackInputStream in = new PushbackInputStream(new BufferedInputStream(this.metrics.meter(socket.getInputStream())), 2);
+            int first = in.read();
+            int second = in.read();
 
-                } catch (Exception e) {
+            if (Handshake.isLegacy(first, second)) {
+                in.unread(new byte[]{(byte) first, (byte) second});
+                serveLegacy(socket, in, out, writers);
+            } else if (Handshake.isHello(first, second)) {
+                int version = Handshake.accept(in.read());
+                out.write(version);
+                out.flush();
+                if (version == Handshake.REJECTED) {
                     socket.close();
-                    e.printStackTrace();
+                    return;
                 }
+
+                BinaryStreamConnection connection = new BinaryStreamConnection(socket, out, newOutboundQueue(),
+                        this.writeBatching, this.metrics, this.events, version);
+                connection.start(writers);
+
+                MessageDecoder decoder = new MessageDecoder(false);
+                new ServerThread(connection, () -> decoder.read(in), this).run();
+            } else {
+                socket.close();
+            }
+
+        } catch (Exception e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
             }
-        } catch (IOException e) {
             e.printStackTrace();
         }
+    }
 
+    /**
+     * Run the session of a client that sends serialized objects, on the calling thread
+     *
+     * @param socket  - the socket connected to the client
+     * @param in      - the stream from the client, starting with its object stream header
+     * @param out     - the stream to the client, after the handshake GREETING
+     * @param writers - runs the writer of the client's connection
+     * @throws IOException if the streams could not be set up
+     */
+    void serveLegacy(Socket socket, InputStream in, OutputStream out, Executor writers) throws IOException {
+        ObjectStreamConnection connection = new ObjectStreamConnection(socket, out, newOutboundQueue(),
+                this.writeBatching, this.metrics, this.events);
+        connection.start(writers);
 
+        new ServerThread(connection, connection.reader(in), this).run();
     }
 
     /**
-     * Determine if the user exists
+     * Create the queue requests wait in before they are written to a client
      *
-     * @param username - the name of the user attempting to see if they exist or not
-     * @return true the user exists, false otherwise
+     * @return the queue
+     */
+    OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(this.queueCapacity, this.overflowPolicy, this.metrics);
+    }
+
+    /**
+     * @return how requests to clients are coalesced, and the clients' socket options
+     */
+    WriteBatching getWriteBatching() {
+        return this.writeBatching;
+    }
+
+    /**
+     * @return the number of requests written to clients in each flush
+     */
+    FlushStats getFlushStats() {
+        return this.metrics.getFlushStats();
+    }
+
+    /**
+     * @return where connections, sign ins and sign outs are logged
+     */
+    EventLog getEvents() {
+        return this.events;
+    }
+
+    /**
+     * @return the server's counters and histograms
+     */
+    ServerMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return true while the server should keep running
      */
-    boolean userExists(String username) {
-        return activeUsers.containsKey(username);
+    static boolean isRunning() {
+        return isRunning;
     }
 
     /**
-     * adds the user to both the hash map of running users and output streams
+     * Sign a user in, unless someone is already signed in with their username.
+     * Checking and adding the user is a single step.
      *
-     * @param username the username
-     * @param out      the Object write thing
+     * @param username   the username
+     * @param connection the connection to the user
+     * @return the user's session, or null if the username is taken
      */
-    void addUser(String username, ObjectOutputStream out) {
-        activeUsers.put(username, out);
-        // user_information_map.put(username, new Users(username,password));
+    Session addUser(String username, ClientConnection connection) {
+        return activeUsers.claim(username, connection);
     }
 
     /**
-     * Removing the user from the HashMap
+     * Removing the user from the registry and the rooms they were in
      *
-     * @param username - the user
+     * @param session - the user's session
      */
-    void removeUser(String username) {
-        activeUsers.remove(username);
+    void removeUser(Session session) {
+        activeUsers.release(session);
+        for (String name : session.getRooms()) {
+            leaveRoom(session, name);
+        }
     }
 
     /**
-     * Method that will send clients a MESSAGE_SENT request
+     * Get a room, creating it (and replaying its journal) if it doesn't exist
+     * yet. Only called on the room's worker, so it is never handed a room that
+     * is being closed, and opening it never holds up the caller's clients;
+     * the default room, which is never closed, may be got anywhere.
      *
-     * @param messageRequest the SEND_MESSAGE request from the Client thread, and the message itself.
+     * @param name - the name of the room
+     * @return the room, or null if the name is not valid or there are too many rooms
      */
-    synchronized void enterMessageChanges(MessageRequest messageRequest) throws IOException {
+    Room getRoom(String name) {
+        Room room = rooms.get(name);
+        if (room != null || !Room.isValidName(name) || rooms.size() >= MAX_ROOMS) {
+            return room;
+        }
+        try {
+            return rooms.computeIfAbsent(name, this::createRoom);
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-        MessageRequest updateMessages = new MessageRequest<>(MessageRequest.RequestType.MESSAGE_SENT, messageRequest.getData());
+    /**
+     * Create a room on the worker its name hashes to
+     *
+     * @param name - the name of the room
+     * @return the room
+     * @throws UncheckedIOException if the room's journal can't be opened
+     */
+    private Room createRoom(String name) {
+        try {
+            MessageJournal journal = null;
+            if (this.journalDirectory != null) {
+                journal = new MessageJournal(new File(this.journalDirectory, name), this.journalFlusher);
+            }
+            Room room = new Room(name, workerFor(name), journal, this.cluster, this.metrics);
+            this.events.log(EventLog.Type.ROOM_OPENED, null, null, name);
+            return room;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        // adding the updated messages to a queue
-        this.message_queue.add(updateMessages);
+    /**
+     * Send a user who has just signed in LOGIN_SUCCESS and the default
+     * room, then start sending them its new messages. This runs on the
+     * room's worker, so the chat they are sent ends exactly where the new
+     * messages start.
+     *
+     * @param session  - the user's session
+     * @param lastSeen - the sequence of the last message the user has seen,
+     *                 -1 if they have none, or null to send the whole chat as text
+     */
+    void welcome(Session session, Long lastSeen) {
+        Room room = getRoom(ChatRoom.DEFAULT_ROOM);
+        session.addRoom(room.getName());
+        // the client renders its own text, so if they fall behind they are sent pages rather than the chat as text
+        session.setReadsHistory(lastSeen != null);
+        room.execute(() -> {
+            try {
+                session.getConnection().send(new MessageRequest<>(MessageRequest.RequestType.LOGIN_SUCCESS, MessageProtocol.LOGIN_SUCCESS));
+                room.join(session, lastSeen);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
 
-        try {
-            // pausing the threads
-            while (!this.messageReady) {
-                this.wait();
+    /**
+     * Add a user to a room, sending them its newest messages. The room is
+     * opened on its worker if it isn't open yet.
+     *
+     * @param session - the user's session
+     * @param name    - the name of the room
+     * @return false if the name is not valid or the user is in too many rooms
+     */
+    boolean joinRoom(Session session, String name) {
+        if (!Room.isValidName(name)) {
+            return false;
+        }
+        if (session.isIn(name)) {
+            return true;
+        }
+        if (session.getRoomCount() >= MAX_ROOMS_PER_USER || !session.addRoom(name)) {
+            return false;
+        }
+        inRoom(name, true, room -> {
+            // the user may have left, or signed out, while the room was waiting to open
+            if (!session.isIn(name)) {
+                return;
             }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            if (room == null) {
+                // there are too many rooms, or the room's journal can't be opened
+                session.removeRoom(name);
+                this.events.log(EventLog.Type.JOIN_REFUSED, session.getUsername(),
+                        session.getConnection().getRemoteAddress(), name);
+                return;
+            }
+            try {
+                room.join(session, -1L);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Take a user out of a room
+     *
+     * @param session - the user's session
+     * @param name    - the name of the room
+     */
+    void leaveRoom(Session session, String name) {
+        if (Room.isValidName(name) && session.removeRoom(name)) {
+            inRoom(name, false, room -> {
+                if (room != null) {
+                    room.leave(session);
+                }
+            });
         }
+    }
+
+    /**
+     * Run a task on a room's worker. The room is looked up on the worker,
+     * after anything already queued for it, so the task is never handed a
+     * room that has been closed.
+     *
+     * @param name - the name of the room
+     * @param open - true to open the room if it isn't open
+     * @param task - given the room, or null if it isn't open and can't be opened
+     */
+    private void inRoom(String name, boolean open, Consumer<Room> task) {
+        workerFor(name).publish(() -> task.accept(open ? getRoom(name) : rooms.get(name)));
+    }
 
-        // Updating the server-side chat
-        this.updateChatRoom(updateMessages);
+    /**
+     * @param name - the name of a room
+     * @return the worker the room's tasks run on
+     */
+    private MessageSequencer<Runnable> workerFor(String name) {
+        return this.workers.get((name.hashCode() & 0x7FFFFFFF) % this.workers.size());
+    }
 
-        // Telling the chat room on the client side to update
-        this.updateClientChat(updateMessages);
+    /**
+     * Close the rooms that have been empty and quiet for ROOM_IDLE_TIME,
+     * every ROOM_SWEEP_INTERVAL, so rooms that were used once don't keep
+     * their messages and journals for as long as the server runs
+     */
+    private void sweepRooms() {
+        long idle = TimeUnit.MILLISECONDS.toNanos(ROOM_IDLE_TIME);
+        while (isRunning) {
+            try {
+                Thread.sleep(ROOM_SWEEP_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Room candidate : rooms.values()) {
+                String name = candidate.getName();
+                if (name.equals(ChatRoom.DEFAULT_ROOM) || !candidate.isIdle(System.nanoTime(), idle)) {
+                    continue;
+                }
+                inRoom(name, false, room -> {
+                    // someone may have joined while the task was queued
+                    if (room != null && room.isIdle(System.nanoTime(), idle)) {
+                        rooms.remove(name, room);
+                        room.close();
+                        this.events.log(EventLog.Type.ROOM_CLOSED, null, null, name);
+                    }
+                });
+            }
+        }
+    }
 
-        this.message_queue.poll();
-        this.messageReady = true;
+    /**
+     * Force what is left of the rooms' journals to the disk, as the server shuts down
+     */
+    void closeRooms() {
+        rooms.values().forEach(Room::close);
+        if (this.journalFlusher != null) {
+            this.journalFlusher.close();
+        }
     }
 
     /**
-     * Updates the chat room
+     * Method that will send clients a MESSAGE_SENT request. The message is
+     * only handed to its room's worker here, so senders never wait on each other.
      *
-     * @param messageRequest the MESSAGE_SENT request
+     * @param messageRequest the SEND_MESSAGE request from the Client thread, and the message itself.
      */
-    private synchronized void updateChatRoom(MessageRequest messageRequest) {
-        this.messageReady = false;
+    void enterMessageChanges(MessageRequest messageRequest) {
+        long start = System.nanoTime();
         UserMessage message = (UserMessage) messageRequest.getData();
-        chatRoom.addMessage(message);
+        if (this.cluster != null && !this.cluster.owns(message.getRoom())) {
+            // the owner puts it in order and relays it back
+            this.cluster.forward(message);
+        } else {
+            sequence(message);
+        }
+        this.metrics.messageIn(System.nanoTime() - start);
     }
 
     /**
-     * Telling the clients to update their view of the chat
+     * Put a message in order in its room, which this server owns
      *
-     * @param messageRequest the MESSAGE_SENT request
+     * @param message - the message
      */
-    private void updateClientChat(MessageRequest messageRequest) throws IOException {
-        for (String username : activeUsers.keySet()) {
-            ObjectOutputStream out = activeUsers.get(username);
-            out.writeUnshared(messageRequest);
-            out.flush();
-        }
+    void sequence(UserMessage message) {
+        long queued = System.nanoTime();
+        inRoom(message.getRoom(), true, room -> {
+            if (room != null) {
+                room.send(message, queued);
+            }
+        });
+    }
+
+    /**
+     * Add a message another node has put in order to its room here
+     *
+     * @param message - the message, with its sequence
+     */
+    void applyRelayed(UserMessage message) {
+        long queued = System.nanoTime();
+        inRoom(message.getRoom(), true, room -> {
+            if (room != null) {
+                room.apply(message, queued);
+            }
+        });
+    }
+
+    /**
+     * Add the messages another node sent for a gap in the messages it
+     * relayed to the room here
+     *
+     * @param page - the missed messages
+     */
+    void fillRelayed(HistoryPage page) {
+        long queued = System.nanoTime();
+        inRoom(page.getRoom(), true, room -> {
+            if (room != null) {
+                room.fill(page, queued);
+            }
+        });
+    }
+
+    /**
+     * Get the page of a room's messages that come just before a sequence,
+     * on the room's worker, for another node that missed them
+     *
+     * @param name   - the name of the room
+     * @param before - the sequence the page should end before
+     * @param reply  - given the page
+     */
+    void getHistoryBefore(String name, long before, Consumer<HistoryPage> reply) {
+        inRoom(name, true, room -> {
+            if (room != null) {
+                reply.accept(room.getHistoryBefore(before));
+            }
+        });
+    }
+
+    /**
+     * Get the page of a room's messages that come just before a sequence
+     *
+     * @param name   - the name of the room
+     * @param before - the sequence the page should end before
+     * @return the page, or null if there is no such room
+     */
+    HistoryPage getHistoryBefore(String name, long before) {
+        Room room = rooms.get(name);
+        return room == null ? null : room.getHistoryBefore(before);
     }
 
     /**
-     * @return the chat room messages
+     * @return the default room's messages
      */
     String getChatMessages() {
-        return chatRoom.toString();
+        return getRoom(ChatRoom.DEFAULT_ROOM).getChatMessages();
     }
 
 }
@@ -0,0 +1,76 @@
+package Chat.Server;
+
+import Chat.MessageRequest;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.function.Supplier;
+
+/**
+ * The server's side of a connection to a single client. Hides whether the
+ * client is being served by its own thread or by an event loop.
+ * <p>
+ * Requests are queued in the connection's OutboundQueue rather than written
+ * by the caller, so sending never waits on the client.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public interface ClientConnection {
+
+    /**
+     * Send a request to the client
+     *
+     * @param request - the request to be sent
+     * @throws IOException if the request could not be sent
+     */
+    default void send(MessageRequest<?> request) throws IOException {
+        send(new EncodedRequest(request));
+    }
+
+    /**
+     * Send a request that was encoded once for many clients
+     *
+     * @param request - the shared request to be sent
+     * @throws IOException if the request could not be sent
+     */
+    void send(EncodedRequest request) throws IOException;
+
+    /**
+     * Send one of a room's messages. Called on the room's worker.
+     *
+     * @param request - the shared request to be sent
+     * @param resync  - builds the request that brings the client up to date
+     *                with the room if they fall behind, or returns null if it can't
+     * @throws IOException if the request could not be sent
+     */
+    default void send(EncodedRequest request, Supplier<EncodedRequest> resync) throws IOException {
+        send(request);
+    }
+
+    /**
+     * @return the queue requests wait in before they are written to the client
+     */
+    OutboundQueue getOutboundQueue();
+
+    /**
+     * @return the client's address, null if it isn't known
+     */
+    default SocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    /**
+     * Close the connection to the client
+     */
+    void close();
+
+    /**
+     * Stop taking requests and close the connection once the ones already
+     * queued, such as the reply to a rejected sign in, have been written
+     */
+    default void closeWhenWritten() {
+        close();
+    }
+}
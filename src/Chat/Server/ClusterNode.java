@@ -0,0 +1,399 @@
+package Chat.Server;
+
+import Chat.HistoryPage;
+import Chat.HistoryRequest;
+import Chat.MessageRequest;
+import Chat.Protocol.MessageDecoder;
+import Chat.UserMessage;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This server's place in a cluster of ChatServer nodes that share their rooms.
+ * <p>
+ * Every node knows every other node, and every room has an owner node,
+ * picked by rendezvous hashing: the node whose id mixed with the room's
+ * name scores highest. Unlike taking the name's hash mod the number of
+ * nodes, this doesn't line up with how ChatServer spreads rooms over its
+ * workers, so the rooms a node owns are spread over all of its workers. The owner is the only node that gives
+ * the room's messages their sequence numbers:
+ * <ul>
+ * <li>A node that is sent a message for a room it doesn't own forwards the
+ * SEND_MESSAGE to the owner.</li>
+ * <li>The owner puts the message in order as usual, and relays the
+ * MESSAGE_SENT to every other node.</li>
+ * <li>The other nodes add the relayed message to their copy of the room
+ * and send it to their own members.</li>
+ * </ul>
+ * Nodes talk over links of their own, on a separate port, using the same
+ * binary frames as the clients. The members of the cluster are fixed when
+ * the nodes start; if an owner is down, its rooms can't be sent to. A node
+ * that finds a gap in the messages relayed to it asks the owner for the
+ * missed ones with a REQUEST_HISTORY, and is sent them as a HISTORY_PAGE.
+ * <p>
+ * A node only listens for links on the address it is given in the cluster,
+ * and every link is authenticated with the cluster's shared secret: the
+ * node being linked to sends a random challenge, and the linking node
+ * answers with an HMAC-SHA256 of it, keyed with the secret, then waits for
+ * the node to accept it. Links that don't answer correctly are closed
+ * before anything is read from them.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+class ClusterNode {
+
+    /**
+     * The first bytes a node writes on a link, followed by its id as a 4 byte int
+     */
+    static final byte[] HELLO = {'P', 'N'};
+
+    /**
+     * The number of random bytes in the challenge a linking node must answer
+     */
+    static final int CHALLENGE_SIZE = 16;
+
+    /**
+     * The longest time a link has to answer the challenge, in milliseconds
+     */
+    static final int HANDSHAKE_TIMEOUT = 10000;
+
+    /**
+     * The byte a node sends once a linking node has answered its challenge
+     */
+    static final int ACCEPTED = 1;
+
+    /**
+     * The MAC a linking node answers the challenge with
+     */
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * The id of this node
+     */
+    private final int id;
+
+    /**
+     * The ids of every node in the cluster, this one included, in order
+     */
+    private final List<Integer> members;
+
+    /**
+     * The address this node listens for links from its peers on
+     */
+    private final InetSocketAddress address;
+
+    /**
+     * The secret every node in the cluster is given
+     */
+    private final byte[] secret;
+
+    /**
+     * Makes the challenges sent to linking nodes
+     */
+    private final SecureRandom random;
+
+    /**
+     * The links to the other nodes, by id
+     */
+    private final Map<Integer, PeerLink> peers;
+
+    /**
+     * The server this node runs, set when the node is started
+     */
+    private ChatServer chatServer;
+
+    /**
+     * Create the node
+     *
+     * @param id        - the id of this node
+     * @param addresses - the cluster address of every node in the cluster, this one included, by id
+     * @param secret    - the secret every node in the cluster is given
+     */
+    private ClusterNode(int id, Map<Integer, InetSocketAddress> addresses, byte[] secret) {
+        this.id = id;
+        this.members = new ArrayList<>(addresses.keySet());
+        Collections.sort(this.members);
+        this.address = addresses.get(id);
+        this.secret = secret;
+        this.random = new SecureRandom();
+        this.peers = new HashMap<>();
+        for (Map.Entry<Integer, InetSocketAddress> node : addresses.entrySet()) {
+            if (node.getKey() != id) {
+                this.peers.put(node.getKey(), new PeerLink(id, node.getKey(), node.getValue(), secret));
+            }
+        }
+    }
+
+    /**
+     * Create a node from the list of the cluster's nodes
+     *
+     * @param id    - the id of this node
+     * @param nodes  - every node in the cluster, this one included, as id@host:port separated by commas
+     * @param secret - the secret every node in the cluster is given
+     * @return the node
+     * @throws IllegalArgumentException if the list is malformed or doesn't include this node, or there is no secret
+     */
+    static ClusterNode parse(int id, String nodes, String secret) {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs a secret to authenticate its nodes.");
+        }
+        Map<Integer, InetSocketAddress> addresses = new HashMap<>();
+        for (String node : nodes.split(",")) {
+            int at = node.indexOf('@');
+            int colon = node.lastIndexOf(':');
+            if (at < 1 || colon < at) {
+                throw new IllegalArgumentException("Expected id@host:port but got " + node);
+            }
+            int nodeId = Integer.parseInt(node.substring(0, at).trim());
+            String host = node.substring(at + 1, colon);
+            int port = Integer.parseInt(node.substring(colon + 1).trim());
+            addresses.put(nodeId, new InetSocketAddress(host, port));
+        }
+        if (!addresses.containsKey(id)) {
+            throw new IllegalArgumentException("Node " + id + " is not in the cluster " + nodes);
+        }
+        return new ClusterNode(id, addresses, secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Start listening for the other nodes and linking to them
+     *
+     * @param server - the server this node runs
+     * @throws IOException if the cluster address could not be listened on
+     */
+    void start(ChatServer server) throws IOException {
+        this.chatServer = server;
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.bind(this.address);
+        Thread listener = new Thread(() -> listen(serverSocket), "cluster-listener");
+        listener.setDaemon(true);
+        listener.start();
+
+        for (PeerLink peer : this.peers.values()) {
+            peer.start();
+        }
+        System.out.println("Node " + this.id + " of " + this.members + " is listening for peers on " + this.address + ".");
+    }
+
+    /**
+     * @param room - the name of a room
+     * @return true if this node gives the room's messages their sequence numbers
+     */
+    boolean owns(String room) {
+        return ownerOf(room) == this.id;
+    }
+
+    /**
+     * Send a message to the node that owns its room
+     *
+     * @param message - the message
+     */
+    void forward(UserMessage message) {
+        PeerLink owner = this.peers.get(ownerOf(message.getRoom()));
+        owner.send(new EncodedRequest(new MessageRequest<>(MessageRequest.RequestType.SEND_MESSAGE, message)));
+    }
+
+    /**
+     * Send a message this node has put in order to every other node
+     *
+     * @param messageSent - the MESSAGE_SENT request, encoded once for every node
+     */
+    void relay(EncodedRequest messageSent) {
+        for (PeerLink peer : this.peers.values()) {
+            peer.send(messageSent);
+        }
+    }
+
+    /**
+     * Ask the node that owns a room for messages this node missed
+     *
+     * @param room   - the name of the room
+     * @param before - the sequence the page of missed messages should end before
+     */
+    void fetch(String room, long before) {
+        PeerLink owner = this.peers.get(ownerOf(room));
+        owner.send(new EncodedRequest(new MessageRequest<>(MessageRequest.RequestType.REQUEST_HISTORY,
+                new HistoryRequest(room, before))));
+    }
+
+    /**
+     * Work out the answer to a challenge
+     *
+     * @param secret    - the secret every node in the cluster is given
+     * @param challenge - the random bytes sent by the node being linked to
+     * @param from      - the id of the linking node
+     * @param to        - the id of the node being linked to
+     * @return the HMAC of the challenge and both ids
+     * @throws IOException if the MAC isn't available
+     */
+    static byte[] answer(byte[] secret, byte[] challenge, int from, int to) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+            mac.update(challenge);
+            mac.update(ByteBuffer.allocate(8).putInt(from).putInt(to).array());
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Can't authenticate the link", e);
+        }
+    }
+
+    /**
+     * @param room - the name of a room
+     * @return the id of the node that owns the room
+     */
+    private int ownerOf(String room) {
+        long name = room.hashCode();
+        int owner = this.members.get(0);
+        long best = Long.MIN_VALUE;
+        for (int member : this.members) {
+            long score = mix(name << 32 ^ member);
+            if (score > best) {
+                best = score;
+                owner = member;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * Scramble the bits of a number, so numbers that differ by a little
+     * score very differently (the finalizer of SplitMix64)
+     *
+     * @param value - the number
+     * @return the scrambled number
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Accept links from the other nodes
+     *
+     * @param serverSocket - the socket listening on the cluster port
+     */
+    private void listen(ServerSocket serverSocket) {
+        while (ChatServer.isRunning()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread reader = new Thread(() -> read(socket), "cluster-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Check that a linking node knows the cluster's secret
+     *
+     * @param link - the link
+     * @param in   - what the linking node sends
+     * @param peer - the id the linking node gave
+     * @return true if it answered the challenge correctly, and was told it was accepted
+     * @throws IOException if the link fails
+     */
+    private boolean authenticate(Socket link, DataInputStream in, int peer) throws IOException {
+        byte[] challenge = new byte[CHALLENGE_SIZE];
+        this.random.nextBytes(challenge);
+        DataOutputStream out = new DataOutputStream(link.getOutputStream());
+        out.write(challenge);
+        out.flush();
+
+        byte[] expected = answer(this.secret, challenge, peer, this.id);
+        byte[] answer = new byte[expected.length];
+        in.readFully(answer);
+        if (!MessageDigest.isEqual(expected, answer)) {
+            return false;
+        }
+        out.write(ACCEPTED);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Apply the requests another node sends over its link
+     *
+     * @param socket - the link
+     */
+    private void read(Socket socket) {
+        int peer = -1;
+        try (Socket link = socket) {
+            // nothing is trusted until the handshake is done, so it can't hold the thread for long
+            link.setSoTimeout(HANDSHAKE_TIMEOUT);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(link.getInputStream()));
+            if (in.readUnsignedByte() != HELLO[0] || in.readUnsignedByte() != HELLO[1]) {
+                return;
+            }
+            int id = in.readInt();
+            if (!this.peers.containsKey(id)) {
+                System.out.println("Refused a link from unknown node " + id + " at " + link.getRemoteSocketAddress() + ".");
+                return;
+            }
+            if (!authenticate(link, in, id)) {
+                System.out.println("Refused a link claiming to be node " + id + " at " + link.getRemoteSocketAddress()
+                        + ", which doesn't know the cluster's secret.");
+                return;
+            }
+            link.setSoTimeout(0);
+            peer = id;
+
+            MessageDecoder decoder = new MessageDecoder(false);
+            while (true) {
+                MessageRequest<?> request = decoder.read(in);
+                switch (request.getType()) {
+                    case SEND_MESSAGE:
+                        UserMessage message = (UserMessage) request.getData();
+                        if (owns(message.getRoom())) {
+                            this.chatServer.sequence(message);
+                        } else {
+                            System.out.println("Node " + peer + " sent a message for " + message.getRoom() + ", which this node doesn't own.");
+                        }
+                        break;
+                    case MESSAGE_SENT:
+                        this.chatServer.applyRelayed((UserMessage) request.getData());
+                        break;
+                    case REQUEST_HISTORY:
+                        HistoryRequest history = (HistoryRequest) request.getData();
+                        PeerLink asker = this.peers.get(peer);
+                        this.chatServer.getHistoryBefore(history.getRoom(), history.getBefore(), page ->
+                                asker.send(new EncodedRequest(new MessageRequest<>(MessageRequest.RequestType.HISTORY_PAGE, page))));
+                        break;
+                    case HISTORY_PAGE:
+                        this.chatServer.fillRelayed((HistoryPage) request.getData());
+                        break;
+                    default:
+                        System.out.println("Node " + peer + " sent an unexpected " + request.getType() + ".");
+                        break;
+                }
+            }
+        } catch (IOException | ClassCastException e) {
+            if (peer >= 0) {
+                System.out.println("The link from node " + peer + " closed: " + e.getMessage());
+            }
+        }
+    }
+}
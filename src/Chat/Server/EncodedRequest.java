@@ -0,0 +1,185 @@
+package Chat.Server;
+
+import Chat.HistoryPage;
+import Chat.MessageRequest;
+import Chat.UserMessage;
+import Chat.Protocol.FrameCompressor;
+import Chat.Protocol.MessageEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A request that is sent to many clients, encoded once and then shared by
+ * every connection it is written to.
+ * <p>
+ * Each wire format is only encoded the first time a connection asks for it,
+ * so a room with no legacy clients never serializes the request. The same
+ * goes for the compressed frame, so a history page sent to many joining
+ * clients is only compressed once.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+final class EncodedRequest {
+
+    /**
+     * The request
+     */
+    private final MessageRequest<?> request;
+
+    /**
+     * The name of the room the request belongs to, null if it belongs to none
+     */
+    private final String room;
+
+    /**
+     * The request as a binary frame
+     */
+    private byte[] frame;
+
+    /**
+     * The binary frame compressed, or the frame itself if it isn't worth compressing
+     */
+    private byte[] compressedFrame;
+
+    /**
+     * The request as a self-contained piece of an object stream
+     */
+    private byte[] serialized;
+
+    /**
+     * Create the shared request
+     *
+     * @param request - the request to be sent
+     */
+    EncodedRequest(MessageRequest<?> request) {
+        this(request, roomOf(request.getData()));
+    }
+
+    /**
+     * Create the shared request for a room whose name isn't in the request, such as its chat as text
+     *
+     * @param request - the request to be sent
+     * @param room    - the name of the room the request belongs to
+     */
+    EncodedRequest(MessageRequest<?> request, String room) {
+        this.request = request;
+        this.room = room;
+    }
+
+    /**
+     * @param data - the data of a request
+     * @return the name of the room the data belongs to, null if it belongs to none
+     */
+    private static String roomOf(Object data) {
+        if (data instanceof UserMessage) {
+            return ((UserMessage) data).getRoom();
+        }
+        if (data instanceof HistoryPage) {
+            return ((HistoryPage) data).getRoom();
+        }
+        return null;
+    }
+
+    /**
+     * @return the request
+     */
+    MessageRequest<?> getRequest() {
+        return this.request;
+    }
+
+    /**
+     * @return the name of the room the request belongs to, null if it belongs to none
+     */
+    String getRoom() {
+        return this.room;
+    }
+
+    /**
+     * Get a read-only view of the binary frame. The bytes are shared, only
+     * the view's position and limit belong to the caller.
+     *
+     * @return the frame, ready to be written
+     * @throws IOException if the request can't be encoded
+     */
+    ByteBuffer frame() throws IOException {
+        return frame(false);
+    }
+
+    /**
+     * Get a read-only view of the binary frame, compressed if it is worth it
+     * and the client can read compressed frames
+     *
+     * @param compressed - true if the client can read compressed frames
+     * @return the frame, ready to be written
+     * @throws IOException if the request can't be encoded
+     */
+    ByteBuffer frame(boolean compressed) throws IOException {
+        return ByteBuffer.wrap(compressed ? compressedFrameBytes() : frameBytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Write the binary frame to a stream
+     *
+     * @param out - the stream
+     * @throws IOException if the request can't be encoded or written
+     */
+    void writeFrame(OutputStream out) throws IOException {
+        writeFrame(out, false);
+    }
+
+    /**
+     * Write the binary frame to a stream, compressed if it is worth it and
+     * the client can read compressed frames
+     *
+     * @param out        - the stream
+     * @param compressed - true if the client can read compressed frames
+     * @throws IOException if the request can't be encoded or written
+     */
+    void writeFrame(OutputStream out, boolean compressed) throws IOException {
+        byte[] bytes = compressed ? compressedFrameBytes() : frameBytes();
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Get the request as written by SerializationBuffer.serialize
+     *
+     * @return the serialized bytes, which must not be changed
+     * @throws IOException if the request can't be serialized
+     */
+    synchronized byte[] serialized() throws IOException {
+        if (this.serialized == null) {
+            this.serialized = SerializationBuffer.serialize(this.request);
+        }
+        return this.serialized;
+    }
+
+    /**
+     * @return the binary frame, encoding it the first time
+     * @throws IOException if the request can't be encoded
+     */
+    private synchronized byte[] frameBytes() throws IOException {
+        if (this.frame == null) {
+            ByteBuffer encoded = new MessageEncoder().encode(this.request);
+            this.frame = encoded.array();
+        }
+        return this.frame;
+    }
+
+    /**
+     * @return the compressed frame, compressing it the first time, or the
+     * frame itself if it isn't worth compressing
+     * @throws IOException if the request can't be encoded
+     */
+    private synchronized byte[] compressedFrameBytes() throws IOException {
+        if (this.compressedFrame == null) {
+            byte[] bytes = frameBytes();
+            this.compressedFrame = FrameCompressor.shouldCompress(this.request.getType(), bytes.length)
+                    ? FrameCompressor.compress(bytes) : bytes;
+        }
+        return this.compressedFrame;
+    }
+}
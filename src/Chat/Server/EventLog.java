@@ -0,0 +1,501 @@
+package Chat.Server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the server's connection, sign in and room events to the console
+ * without holding up the threads that accept and sign in clients or run
+ * the rooms.
+ * <p>
+ * Events go through a ring buffer like the one in MessageSequencer, except
+ * that its slots are filled in place: every slot holds an Event that is
+ * created with the ring and reused, so logging an event allocates nothing.
+ * A single thread turns the events into lines of the form
+ * <pre>
+ * time=2026-10-18T18:06:44.123Z seq=12 event=SIGNED_IN user="alice" remote=/127.0.0.1:40422
+ * </pre>
+ * and only writes them out when it runs out of events. When the ring is
+ * full, events are either dropped and counted or the logging thread waits
+ * for a free slot.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class EventLog {
+
+    /**
+     * Default number of slots in the ring
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    /**
+     * The most numbers that can go with an event
+     */
+    private static final int MAX_VALUES = 4;
+
+    /**
+     * Number of times to check for work before parking
+     */
+    private static final int SPINS = 100;
+
+    /**
+     * The kinds of event that are logged, each with the names of the
+     * numbers that go with it
+     */
+    public enum Type {
+
+        /**
+         * A client has connected
+         */
+        CONNECTED,
+
+        /**
+         * A client has signed in
+         */
+        SIGNED_IN,
+
+        /**
+         * A sign in was turned down because the username was empty
+         */
+        INVALID_USERNAME,
+
+        /**
+         * A sign in was turned down because the username was taken
+         */
+        USER_ALREADY_EXISTS,
+
+        /**
+         * A client has gone away, with how far their OutboundQueue fell behind
+         */
+        SIGNED_OUT("queue_max", "queue_dropped"),
+
+        /**
+         * A client was disconnected because their OutboundQueue was full
+         */
+        SLOW_CONSUMER("queue_max", "queue_dropped"),
+
+        /**
+         * A connection that sends serialized objects was closed, with what went over it
+         */
+        CLOSED("objects_out", "bytes_out", "objects_in", "bytes_in"),
+
+        /**
+         * A room was opened
+         */
+        ROOM_OPENED,
+
+        /**
+         * A room was closed after being empty and quiet for a while
+         */
+        ROOM_CLOSED,
+
+        /**
+         * A user could not join a room
+         */
+        JOIN_REFUSED,
+
+        /**
+         * Events were dropped because the ring was full
+         */
+        DROPPED("count");
+
+        /**
+         * The names of the numbers that go with the event, at most MAX_VALUES
+         */
+        private final String[] values;
+
+        /**
+         * @param values - the names of the numbers that go with the event
+         */
+        Type(String... values) {
+            this.values = values;
+        }
+    }
+
+    /**
+     * A slot of the ring. Only written by the publisher that claimed it,
+     * and only read by the writer thread once it is published.
+     */
+    private static final class Event {
+
+        /**
+         * The kind of event
+         */
+        private Type type;
+
+        /**
+         * When it happened, in milliseconds since the epoch
+         */
+        private long time;
+
+        /**
+         * The username, null if there is none
+         */
+        private String user;
+
+        /**
+         * The client's address, null if it isn't known
+         */
+        private SocketAddress remote;
+
+        /**
+         * The name of the room, null if there is none
+         */
+        private String room;
+
+        /**
+         * The numbers that go with the event, such as the number dropped
+         */
+        private final long[] values = new long[MAX_VALUES];
+    }
+
+    /**
+     * The slots of the ring, created up front and reused
+     */
+    private final Event[] slots;
+
+    /**
+     * The sequence published in each slot, or -1 if it has never been used
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * slots.length - 1, for turning a sequence into a slot
+     */
+    private final int mask;
+
+    /**
+     * The next sequence a publisher will claim
+     */
+    private final AtomicLong claimed;
+
+    /**
+     * true to drop events when the ring is full, false to wait for a free slot
+     */
+    private final boolean dropWhenFull;
+
+    /**
+     * The number of events dropped because the ring was full
+     */
+    private final LongAdder dropped;
+
+    /**
+     * Where the lines are written
+     */
+    private final Writer out;
+
+    /**
+     * The line being written, reused for every event
+     */
+    private final StringBuilder line;
+
+    /**
+     * The thread that writes the events
+     */
+    private final Thread thread;
+
+    /**
+     * The next sequence the writer will read. Slots before it are free.
+     */
+    private volatile long cursor;
+
+    /**
+     * true while the writer thread is parked waiting for an event
+     */
+    private volatile boolean waiting;
+
+    /**
+     * true while the writer thread should keep running
+     */
+    private volatile boolean running;
+
+    /**
+     * Create the log and start its writer thread
+     *
+     * @param size         - the number of slots in the ring, a power of two
+     * @param dropWhenFull - true to drop events when the ring is full, false to wait for a free slot
+     * @param out          - where the lines are written
+     */
+    public EventLog(int size, boolean dropWhenFull, OutputStream out) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of two.");
+        }
+        this.slots = new Event[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.slots[i] = new Event();
+            this.published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.claimed = new AtomicLong();
+        this.dropWhenFull = dropWhenFull;
+        this.dropped = new LongAdder();
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        this.line = new StringBuilder(256);
+        this.running = true;
+
+        this.thread = new Thread(this::run, "event-log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Log an event. Returns as soon as the event is in the ring.
+     *
+     * @param type   - the kind of event
+     * @param user   - the username, null if there is none
+     * @param remote - the client's address, null if it isn't known
+     */
+    public void log(Type type, String user, SocketAddress remote) {
+        publish(type, user, remote, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * Log an event about a room. Returns as soon as the event is in the ring.
+     *
+     * @param type   - the kind of event
+     * @param user   - the username, null if there is none
+     * @param remote - the client's address, null if it isn't known
+     * @param room   - the name of the room
+     */
+    public void log(Type type, String user, SocketAddress remote, String room) {
+        publish(type, user, remote, room, 0, 0, 0, 0);
+    }
+
+    /**
+     * Log an event with the numbers that go with it. Returns as soon as the
+     * event is in the ring.
+     *
+     * @param type   - the kind of event
+     * @param user   - the username, null if there is none
+     * @param remote - the client's address, null if it isn't known
+     * @param first  - the first number named by the type
+     * @param second - the second number named by the type
+     */
+    public void log(Type type, String user, SocketAddress remote, long first, long second) {
+        publish(type, user, remote, null, first, second, 0, 0);
+    }
+
+    /**
+     * Log an event with the four numbers that go with it. Returns as soon as
+     * the event is in the ring.
+     *
+     * @param type   - the kind of event
+     * @param user   - the username, null if there is none
+     * @param remote - the client's address, null if it isn't known
+     * @param first  - the first number named by the type
+     * @param second - the second number named by the type
+     * @param third  - the third number named by the type
+     * @param fourth - the fourth number named by the type
+     */
+    public void log(Type type, String user, SocketAddress remote, long first, long second, long third, long fourth) {
+        publish(type, user, remote, null, first, second, third, fourth);
+    }
+
+    /**
+     * @return the number of events dropped because the ring was full
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Write out the events already logged and stop the writer thread
+     *
+     * @param timeout - the longest time to wait for the writer, in milliseconds
+     */
+    public void close(long timeout) {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+        try {
+            this.thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Claim a slot, fill it in and publish it
+     *
+     * @param type   - the kind of event
+     * @param user   - the username, null if there is none
+     * @param remote - the client's address, null if it isn't known
+     * @param room   - the name of the room, null if there is none
+     * @param first  - the first number that goes with the event
+     * @param second - the second number that goes with the event
+     * @param third  - the third number that goes with the event
+     * @param fourth - the fourth number that goes with the event
+     * @return true if the event was published, false if it was dropped
+     */
+    private boolean publish(Type type, String user, SocketAddress remote, String room,
+                            long first, long second, long third, long fourth) {
+        long sequence;
+        if (this.dropWhenFull) {
+            // only claim a slot that is already free, so a dropped event leaves no gap
+            do {
+                sequence = this.claimed.get();
+                if (sequence - this.cursor >= this.slots.length) {
+                    this.dropped.increment();
+                    return false;
+                }
+            } while (!this.claimed.compareAndSet(sequence, sequence + 1));
+        } else {
+            sequence = this.claimed.getAndIncrement();
+            while (sequence - this.cursor >= this.slots.length) {
+                LockSupport.parkNanos(1000);
+            }
+        }
+
+        int index = (int) sequence & this.mask;
+        Event event = this.slots[index];
+        event.type = type;
+        event.time = System.currentTimeMillis();
+        event.user = user;
+        event.remote = remote;
+        event.room = room;
+        event.values[0] = first;
+        event.values[1] = second;
+        event.values[2] = third;
+        event.values[3] = fourth;
+        this.published.set(index, sequence);
+
+        if (this.waiting) {
+            LockSupport.unpark(this.thread);
+        }
+        return true;
+    }
+
+    /**
+     * Write the published events in order, flushing whenever there are none left
+     */
+    private void run() {
+        long next = this.cursor;
+        long reported = 0;
+        int spins = 0;
+        while (true) {
+            int index = (int) next & this.mask;
+            if (this.published.get(index) != next) {
+                long drops = this.dropped.sum();
+                // a publisher may have taken the free slot, then this is tried again
+                if (drops != reported && publish(Type.DROPPED, null, null, null, drops - reported, 0, 0, 0)) {
+                    reported = drops;
+                    continue;
+                }
+                flush();
+                if (!this.running) {
+                    return;
+                }
+                if (spins++ < SPINS) {
+                    Thread.yield();
+                    continue;
+                }
+
+                // tell publishers to wake us, then check once more before parking
+                this.waiting = true;
+                if (this.published.get(index) != next) {
+                    LockSupport.parkNanos(this, 100000000);
+                }
+                this.waiting = false;
+                continue;
+            }
+            spins = 0;
+
+            Event event = this.slots[index];
+            write(next, event);
+            // don't keep the names and address reachable until the slot comes around again
+            event.user = null;
+            event.room = null;
+            event.remote = null;
+
+            next++;
+            this.cursor = next;
+        }
+    }
+
+    /**
+     * Turn an event into a line and add it to the buffer
+     *
+     * @param sequence - the event's place in the log
+     * @param event    - the event
+     */
+    private void write(long sequence, Event event) {
+        StringBuilder line = this.line;
+        line.setLength(0);
+        line.append("time=").append(Instant.ofEpochMilli(event.time))
+                .append(" seq=").append(sequence)
+                .append(" event=").append(event.type);
+        if (event.user != null) {
+            line.append(" user=");
+            quote(line, event.user);
+        }
+        if (event.room != null) {
+            line.append(" room=");
+            quote(line, event.room);
+        }
+        if (event.remote != null) {
+            line.append(" remote=").append(event.remote);
+        }
+        String[] values = event.type.values;
+        for (int i = 0; i < values.length; i++) {
+            line.append(' ').append(values[i]).append('=').append(event.values[i]);
+        }
+        line.append(System.lineSeparator());
+        try {
+            this.out.append(line);
+        } catch (IOException e) {
+            // the console has gone away, there is nowhere left to report it
+        }
+    }
+
+    /**
+     * Write a value between quotes, escaping anything that would break up the line
+     *
+     * @param line  - the line
+     * @param value - the value, which a client chose
+     */
+    private static void quote(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    line.append('\\').append(c);
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                default:
+                    line.append(c);
+                    break;
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Write out the buffered lines
+     */
+    private void flush() {
+        try {
+            this.out.flush();
+        } catch (IOException e) {
+            // the console has gone away, there is nowhere left to report it
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package Chat.Server;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * A thread that serves many clients at once with a Selector. Every
+ * connection registered with the loop is only ever read from and written to
+ * by the loop's own thread.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+class EventLoop implements Runnable {
+
+    /**
+     * The server
+     */
+    private final ChatServer chatServer;
+
+    /**
+     * Runs the sessions of clients that send serialized objects
+     */
+    private final Executor legacySessions;
+
+    /**
+     * Tells the loop which channels are ready
+     */
+    private final Selector selector;
+
+    /**
+     * Work handed to the loop by other threads
+     */
+    private final ConcurrentLinkedQueue<Runnable> tasks;
+
+    /**
+     * The thread running the loop
+     */
+    private volatile Thread thread;
+
+    /**
+     * Create the loop
+     *
+     * @param server         - the ChatServer itself
+     * @param legacySessions - runs the sessions of clients that send serialized objects
+     * @throws IOException if the selector could not be opened
+     */
+    EventLoop(ChatServer server, Executor legacySessions) throws IOException {
+        this.chatServer = server;
+        this.legacySessions = legacySessions;
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Hand a newly accepted client to this loop
+     *
+     * @param channel - the client's channel, already non-blocking
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                ChannelConnection connection = new ChannelConnection(channel, this, this.chatServer.newOutboundQueue(),
+                        this.chatServer.getWriteBatching(), this.chatServer.getMetrics(), this.chatServer.getEvents());
+                SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ, connection);
+                connection.attach(new ServerThread(connection, this.chatServer), key);
+            } catch (IOException e) {
+                e.printStackTrace();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+    }
+
+    /**
+     * Move a client that sends serialized objects off the loop and onto a
+     * blocking ServerThread session. The channel's key must already be cancelled.
+     *
+     * @param channel  - the client's channel
+     * @param unsent   - bytes queued for the client that have not been written yet
+     * @param received - bytes already read from the client
+     */
+    void handOff(SocketChannel channel, Queue<ByteBuffer> unsent, byte[] received) {
+        // the channel can only be made blocking once the selector has dropped the cancelled key
+        execute(() -> {
+            try {
+                channel.configureBlocking(true);
+                ByteBuffer bytes;
+                while ((bytes = unsent.poll()) != null) {
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                return;
+            }
+
+            this.legacySessions.execute(() -> {
+                Socket socket = channel.socket();
+                ServerMetrics metrics = this.chatServer.getMetrics();
+                try {
+                    this.chatServer.serveLegacy(socket,
+                            new SequenceInputStream(new ByteArrayInputStream(received), metrics.meter(socket.getInputStream())),
+                            new BufferedOutputStream(metrics.meter(socket.getOutputStream())),
+                            this.legacySessions);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * Ask the loop to write a connection's queued frames
+     *
+     * @param connection - the connection with frames to write
+     */
+    void requestWrite(ChannelConnection connection) {
+        if (Thread.currentThread() == this.thread) {
+            connection.enableWrite();
+        } else {
+            execute(connection::enableWrite);
+        }
+    }
+
+    /**
+     * Run a task on the loop's thread
+     *
+     * @param task - the task
+     */
+    void execute(Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Wait for channels to become ready and serve them
+     */
+    @Override
+    public void run() {
+        this.thread = Thread.currentThread();
+        while (ChatServer.isRunning()) {
+            try {
+                this.selector.select();
+            } catch (IOException e) {
+                e.printStackTrace();
+                break;
+            }
+
+            Runnable task;
+            while ((task = this.tasks.poll()) != null) {
+                task.run();
+            }
+
+            Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                ChannelConnection connection = (ChannelConnection) key.attachment();
+                try {
+                    if (key.isValid() && key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                } catch (IOException e) {
+                    connection.disconnected();
+                } catch (RuntimeException e) {
+                    // a bad request from one client mustn't stop the loop for every other client
+                    e.printStackTrace();
+                    connection.disconnected();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package Chat.Server;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A single thread that forces every open MessageJournal to the disk every
+ * fsync interval (group commit), however many rooms have a journal.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class JournalFlusher {
+
+    /**
+     * The time between forcing the journals to the disk, in milliseconds
+     */
+    private final long interval;
+
+    /**
+     * The journals that are open
+     */
+    private final Set<MessageJournal> journals;
+
+    /**
+     * The thread that forces the journals to the disk
+     */
+    private final Thread thread;
+
+    /**
+     * true until the flusher is closed
+     */
+    private volatile boolean running;
+
+    /**
+     * Create the flusher and start its thread
+     *
+     * @param interval - the time between forcing the journals to the disk, in milliseconds
+     */
+    public JournalFlusher(long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The fsync interval must be positive.");
+        }
+        this.interval = interval;
+        this.journals = ConcurrentHashMap.newKeySet();
+        this.running = true;
+
+        this.thread = new Thread(this::run, "journal-flusher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Start forcing a journal to the disk
+     *
+     * @param journal - the journal
+     */
+    void add(MessageJournal journal) {
+        this.journals.add(journal);
+    }
+
+    /**
+     * Stop forcing a journal to the disk, once it is closed
+     *
+     * @param journal - the journal
+     */
+    void remove(MessageJournal journal) {
+        this.journals.remove(journal);
+    }
+
+    /**
+     * Stop the thread. The journals are not forced, closing them does that.
+     */
+    public void close() {
+        this.running = false;
+        this.thread.interrupt();
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Force the journals to the disk every interval until the flusher is closed
+     */
+    private void run() {
+        while (this.running) {
+            try {
+                Thread.sleep(this.interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (MessageJournal journal : this.journals) {
+                journal.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package Chat.Server;
+
+import Chat.UserMessage;
+import Chat.Users;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the messages sent in the chat room, so the room
+ * survives a restart.
+ * <p>
+ * The journal is a directory of segment files. Each segment is mapped into
+ * memory and records are copied straight into the mapping, so appending a
+ * message never waits on the disk; once a record is in the mapping it
+ * survives the server process dying. A JournalFlusher, shared by every
+ * room's journal, forces the mapping to the disk every fsync interval
+ * (group commit), so a crash of the whole machine loses at most that
+ * interval of messages.
+ * <p>
+ * Every record is the length of its payload, the CRC32 of its payload and
+ * then the payload: the message's sequence, its timestamp, the username
+ * and the text. A segment is named after the sequence of its first record
+ * and is filled with zeros past its last record. Only the newest segments
+ * are kept.
+ * <p>
+ * Only one thread may append at a time (the sequencer's thread).
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class MessageJournal implements Closeable {
+
+    /**
+     * Default size of a segment file
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Default number of segment files to keep
+     */
+    public static final int DEFAULT_RETAINED_SEGMENTS = 8;
+
+    /**
+     * Default time between forcing the journals to the disk, in milliseconds
+     */
+    public static final long DEFAULT_FSYNC_INTERVAL = 100;
+
+    /**
+     * Size of the length and CRC in front of every record
+     */
+    private static final int RECORD_HEADER = 8;
+
+    /**
+     * Segment files end with this
+     */
+    private static final String SUFFIX = ".journal";
+
+    /**
+     * The directory the segments are in
+     */
+    private final File directory;
+
+    /**
+     * The size of a segment file
+     */
+    private final int segmentSize;
+
+    /**
+     * The number of segment files to keep
+     */
+    private final int retainedSegments;
+
+    /**
+     * The segment files, oldest first
+     */
+    private final ArrayDeque<File> files;
+
+    /**
+     * Segments that have filled up and still need to be forced to the disk
+     */
+    private final ConcurrentLinkedQueue<Segment> rolled;
+
+    /**
+     * Checksums records
+     */
+    private final CRC32 crc;
+
+    /**
+     * Forces the journal to the disk every fsync interval, null if every append is forced
+     */
+    private final JournalFlusher flusher;
+
+    /**
+     * The segment being appended to
+     */
+    private volatile Segment current;
+
+    /**
+     * The sequence the next record is expected to have
+     */
+    private long nextSequence;
+
+    /**
+     * true once records have been appended that have not been forced to the disk
+     */
+    private volatile boolean dirty;
+
+    /**
+     * Open a journal with the default segment size and retention, creating
+     * the directory if it doesn't exist
+     *
+     * @param directory - the directory the segments are in
+     * @param flusher   - forces the journal to the disk, null to force after every append
+     * @throws IOException if the journal can't be opened
+     */
+    public MessageJournal(File directory, JournalFlusher flusher) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_RETAINED_SEGMENTS, flusher);
+    }
+
+    /**
+     * Open a journal, creating the directory if it doesn't exist
+     *
+     * @param directory        - the directory the segments are in
+     * @param segmentSize      - the size of a segment file
+     * @param retainedSegments - the number of segment files to keep
+     * @param flusher          - forces the journal to the disk, null to force after every append
+     * @throws IOException if the journal can't be opened
+     */
+    public MessageJournal(File directory, int segmentSize, int retainedSegments, JournalFlusher flusher)
+            throws IOException {
+        if (segmentSize <= RECORD_HEADER || retainedSegments < 1) {
+            throw new IllegalArgumentException("Invalid journal settings.");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create journal directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retainedSegments = retainedSegments;
+        this.flusher = flusher;
+        this.files = new ArrayDeque<>();
+        this.rolled = new ConcurrentLinkedQueue<>();
+        this.crc = new CRC32();
+        this.nextSequence = -1;
+
+        File[] existing = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (existing != null) {
+            Arrays.sort(existing, (a, b) -> Long.compare(baseSequence(a), baseSequence(b)));
+            this.files.addAll(Arrays.asList(existing));
+        }
+    }
+
+    /**
+     * Read every record in the journal, oldest first, and get ready to
+     * append after the last one. Reading a segment stops at the first record
+     * that is torn, fails its CRC or is out of sequence, and reading the
+     * journal stops at a segment that overlaps the ones before it; the
+     * segments after that are thrown away. Must be called once, before the
+     * first append.
+     *
+     * @param handler - given each message, with its sequence set
+     * @return the sequence the next message should be given, 0 if the journal is empty
+     * @throws IOException if the journal can't be read
+     */
+    public long replay(Consumer<UserMessage> handler) throws IOException {
+        long expected = -1;
+        File last = null;
+        int end = 0;
+
+        for (File file : this.files) {
+            long base = baseSequence(file);
+            if (base < expected || base < 0) {
+                // overlaps what has been read already, nothing after it can be trusted
+                break;
+            }
+            // messages the journal failed to save are skipped
+            expected = base;
+            Segment segment = new Segment(file, this.segmentSize);
+
+            ByteBuffer buffer = segment.buffer;
+            while (true) {
+                UserMessage message = readRecord(buffer, expected);
+                if (message == null) {
+                    break;
+                }
+                handler.accept(message);
+                expected++;
+            }
+            last = file;
+            end = buffer.position();
+            segment.close();
+        }
+
+        // drop any segments after the last good record
+        while (!this.files.isEmpty() && this.files.peekLast() != last) {
+            File dropped = this.files.pollLast();
+            if (!dropped.delete()) {
+                throw new IOException("Could not delete " + dropped);
+            }
+        }
+
+        this.nextSequence = Math.max(expected, 0);
+        if (last == null) {
+            this.current = createSegment(this.nextSequence);
+        } else {
+            this.current = new Segment(last, this.segmentSize);
+            this.current.buffer.position(end);
+            // wipe whatever was after the last good record, so it can't be read back later
+            while (this.current.buffer.hasRemaining()) {
+                this.current.buffer.put((byte) 0);
+            }
+            this.current.buffer.position(end);
+            this.current.buffer.force();
+        }
+
+        if (this.flusher != null) {
+            this.flusher.add(this);
+        }
+        return this.nextSequence;
+    }
+
+    /**
+     * Append a message to the journal. The message must already have its
+     * sequence, and it must come after the last message appended.
+     *
+     * @param message - the message
+     * @throws IOException if the message can't be appended
+     */
+    public void append(UserMessage message) throws IOException {
+        if (message.getSequence() < this.nextSequence) {
+            throw new IOException("Expected sequence " + this.nextSequence + " but got " + message.getSequence());
+        }
+        Segment segment = this.current;
+        if (message.getSequence() > this.nextSequence) {
+            // earlier messages failed to save, start a segment at this one so replay knows where it is
+            this.nextSequence = message.getSequence();
+            segment = roll();
+        }
+
+        byte[] username = bytes(message.getUsername());
+        byte[] text = bytes(message.getMessage());
+        int length = 8 + 8 + 4 + (username == null ? 0 : username.length) + 4 + (text == null ? 0 : text.length);
+        if (RECORD_HEADER + length > this.segmentSize) {
+            throw new IOException("Message " + message.getSequence() + " is too big for a journal segment");
+        }
+        if (segment.buffer.remaining() < RECORD_HEADER + length) {
+            segment = roll();
+        }
+
+        ByteBuffer buffer = segment.buffer;
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER);
+        buffer.putLong(message.getSequence());
+        buffer.putLong(message.getTime());
+        putBytes(buffer, username);
+        putBytes(buffer, text);
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + RECORD_HEADER);
+        payload.limit(start + RECORD_HEADER + length);
+        this.crc.reset();
+        this.crc.update(payload);
+        // the length goes in last, so a record is never seen without its payload
+        buffer.putInt(start + 4, (int) this.crc.getValue());
+        buffer.putInt(start, length);
+
+        this.nextSequence++;
+        if (this.flusher == null) {
+            segment.buffer.force();
+        } else {
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * Force everything appended so far to the disk. Called by the flusher
+     * while the room's worker appends.
+     */
+    public synchronized void flush() {
+        Segment segment;
+        while ((segment = this.rolled.poll()) != null) {
+            segment.buffer.force();
+            segment.close();
+        }
+        if (this.dirty) {
+            this.dirty = false;
+            segment = this.current;
+            if (segment != null) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Stop being flushed and force everything appended so far to the disk
+     */
+    @Override
+    public synchronized void close() {
+        if (this.flusher != null) {
+            this.flusher.remove(this);
+        }
+        flush();
+        if (this.current != null) {
+            this.current.buffer.force();
+            this.current.close();
+        }
+    }
+
+    /**
+     * Start a new segment, handing the full one to the flusher and deleting
+     * the oldest segments past the retention limit
+     *
+     * @return the new segment
+     * @throws IOException if the segment can't be created
+     */
+    private Segment roll() throws IOException {
+        Segment full = this.current;
+        Segment next = createSegment(this.nextSequence);
+        this.current = next;
+        if (this.flusher == null) {
+            full.buffer.force();
+            full.close();
+        } else {
+            this.rolled.add(full);
+        }
+
+        while (this.files.size() > this.retainedSegments) {
+            File oldest = this.files.pollFirst();
+            if (!oldest.delete()) {
+                System.err.println("Could not delete old journal segment " + oldest);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Create and map a new segment file
+     *
+     * @param base - the sequence of the first record in the segment
+     * @return the segment
+     * @throws IOException if the segment can't be created
+     */
+    private Segment createSegment(long base) throws IOException {
+        File file = new File(this.directory, String.format("%020d", base) + SUFFIX);
+        Segment segment = new Segment(file, this.segmentSize);
+        this.files.addLast(file);
+        return segment;
+    }
+
+    /**
+     * Read the record at the buffer's position, leaving the position after
+     * it. The position is left alone if there is no good record there.
+     *
+     * @param buffer   - the segment
+     * @param sequence - the sequence the record should have
+     * @return the message, or null if there is no good record
+     */
+    private UserMessage readRecord(ByteBuffer buffer, long sequence) {
+        int start = buffer.position();
+        try {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                return null;
+            }
+
+            ByteBuffer payload = buffer.duplicate();
+            payload.limit(buffer.position() + length);
+            this.crc.reset();
+            this.crc.update(payload);
+            if ((int) this.crc.getValue() != checksum || buffer.getLong() != sequence) {
+                buffer.position(start);
+                return null;
+            }
+
+            long time = buffer.getLong();
+            String username = getString(buffer);
+            String text = getString(buffer);
+            UserMessage message = new UserMessage(new Users(username), time, text);
+            message.setSequence(sequence);
+            return message;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            buffer.position(start);
+            return null;
+        }
+    }
+
+    /**
+     * @param value - a string, may be null
+     * @return its UTF-8 bytes, or null
+     */
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write bytes as their length, -1 for null, followed by the bytes
+     *
+     * @param buffer - the buffer
+     * @param bytes  - the bytes, may be null
+     */
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Read a string written by putBytes
+     *
+     * @param buffer - the buffer
+     * @return the string, may be null
+     */
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param file - a segment file
+     * @return the sequence of the first record in it
+     */
+    private static long baseSequence(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A segment file mapped into memory
+     */
+    private static class Segment {
+
+        /**
+         * The open file
+         */
+        private final RandomAccessFile file;
+
+        /**
+         * The whole file, mapped into memory
+         */
+        private final MappedByteBuffer buffer;
+
+        /**
+         * Map a segment file, creating it if it doesn't exist
+         *
+         * @param file - the file
+         * @param size - the size of the file
+         * @throws IOException if the file can't be mapped
+         */
+        Segment(File file, int size) throws IOException {
+            this.file = new RandomAccessFile(file, "rw");
+            try {
+                long length = Math.max(this.file.length(), size);
+                this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.min(length, Integer.MAX_VALUE));
+            } catch (IOException e) {
+                this.file.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Close the file. The mapping stays valid until it is garbage collected.
+         */
+        void close() {
+            try {
+                this.file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package Chat.Server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Puts the events published by many threads into a single order and hands
+ * them, one at a time, to a handler running on a thread of its own.
+ * <p>
+ * Events are kept in a ring buffer, in the style of the LMAX Disruptor.
+ * A publisher claims the next slot with a single atomic increment, fills it
+ * in and marks it as published; no lock is taken on the way in. The handler
+ * thread reads the slots in order and frees each one once it has been
+ * handled. Publishers only wait when the ring is full.
+ *
+ * @param <E> the type of event
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class MessageSequencer<E> {
+
+    /**
+     * Default number of slots in the ring
+     */
+    public static final int DEFAULT_SIZE = 4096;
+
+    /**
+     * Number of times to check for work before parking
+     */
+    private static final int SPINS = 100;
+
+    /**
+     * The slots of the ring
+     */
+    private final Object[] slots;
+
+    /**
+     * The sequence published in each slot, or -1 if it has never been used
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * slots.length - 1, for turning a sequence into a slot
+     */
+    private final int mask;
+
+    /**
+     * The next sequence a publisher will claim
+     */
+    private final AtomicLong claimed;
+
+    /**
+     * Handles each event, in order
+     */
+    private final Consumer<E> handler;
+
+    /**
+     * The thread that runs the handler
+     */
+    private final Thread thread;
+
+    /**
+     * The next sequence the handler will read. Slots before it are free.
+     */
+    private volatile long cursor;
+
+    /**
+     * true while the handler thread is parked waiting for an event
+     */
+    private volatile boolean waiting;
+
+    /**
+     * true while the handler thread should keep running
+     */
+    private volatile boolean running;
+
+    /**
+     * Create the sequencer and start its handler thread
+     *
+     * @param name    - the name of the handler thread
+     * @param size    - the number of slots in the ring, a power of two
+     * @param handler - handles each event, in order
+     */
+    public MessageSequencer(String name, int size, Consumer<E> handler) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of two.");
+        }
+        this.slots = new Object[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.claimed = new AtomicLong();
+        this.handler = handler;
+        this.running = true;
+
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Publish an event. Returns as soon as the event has a place in the
+     * order; the handler runs later on its own thread.
+     *
+     * @param event - the event
+     */
+    public void publish(E event) {
+        long sequence = this.claimed.getAndIncrement();
+
+        // wait for the handler to free the slot if the ring is full
+        while (sequence - this.cursor >= this.slots.length) {
+            LockSupport.parkNanos(1000);
+        }
+
+        int index = (int) sequence & this.mask;
+        this.slots[index] = event;
+        this.published.set(index, sequence);
+
+        if (this.waiting) {
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    /**
+     * Stop the handler thread once it has run out of events
+     */
+    public void stop() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+    }
+
+    /**
+     * @return the number of events published but not handled yet
+     */
+    public long getBacklog() {
+        return Math.max(0, this.claimed.get() - this.cursor);
+    }
+
+    /**
+     * Handle the published events in order
+     */
+    @SuppressWarnings("unchecked")
+    private void run() {
+        long next = this.cursor;
+        int spins = 0;
+        while (true) {
+            int index = (int) next & this.mask;
+            if (this.published.get(index) != next) {
+                if (!this.running) {
+                    return;
+                }
+                if (spins++ < SPINS) {
+                    Thread.yield();
+                    continue;
+                }
+
+                // tell publishers to wake us, then check once more before parking
+                this.waiting = true;
+                if (this.published.get(index) != next) {
+                    LockSupport.parkNanos(this, 1000000);
+                }
+                this.waiting = false;
+                continue;
+            }
+            spins = 0;
+
+            E event = (E) this.slots[index];
+            this.slots[index] = null;
+            try {
+                this.handler.accept(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+
+            next++;
+            this.cursor = next;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package Chat.Server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the server's metrics as plain text over HTTP, for a scraper such
+ * as Prometheus or for curl. It only listens on the loopback address, so
+ * the metrics can't be read from other machines.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+final class MetricsEndpoint {
+
+    /**
+     * The path the metrics are served at
+     */
+    static final String PATH = "/metrics";
+
+    /**
+     * Not used, all methods are static
+     */
+    private MetricsEndpoint() {
+    }
+
+    /**
+     * Start serving the metrics on a thread of its own
+     *
+     * @param metrics - the metrics
+     * @param port    - the local port to listen on
+     * @throws IOException if the port can't be listened on
+     */
+    static void start(ServerMetrics metrics, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, exchange -> serve(exchange, metrics));
+        server.setExecutor(Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-endpoint");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        System.out.println("Metrics are served at http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + PATH);
+    }
+
+    /**
+     * Answer a request for the metrics
+     *
+     * @param exchange - the request
+     * @param metrics  - the metrics
+     * @throws IOException if the answer can't be written
+     */
+    private static void serve(HttpExchange exchange, ServerMetrics metrics) throws IOException {
+        byte[] body = metrics.getText().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
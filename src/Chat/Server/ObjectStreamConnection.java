@@ -0,0 +1,170 @@
+package Chat.Server;
+
+import Chat.MessageRequest;
+import Chat.Protocol.WriteBatching;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Connection to a legacy client that is served by its own ServerThread and
+ * reads serialized objects.
+ * <p>
+ * Every request written starts with a reset (see SerializationBuffer), so
+ * neither side's stream keeps a handle table that grows for as long as
+ * the connection is open. The connection counts the objects and bytes it
+ * writes and reads, and logs them when it is closed.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+class ObjectStreamConnection extends StreamConnection {
+
+    /**
+     * the (buffered) stream to the client, already past the object stream header
+     **/
+    private final OutputStream out;
+
+    /**
+     * The number of requests written to the client. Only changed by the writer.
+     */
+    private volatile long objectsWritten;
+
+    /**
+     * The number of bytes written to the client. Only changed by the writer.
+     */
+    private volatile long bytesWritten;
+
+    /**
+     * The number of requests read from the client. Only changed by the reader.
+     */
+    private volatile long objectsRead;
+
+    /**
+     * Counts the bytes read from the client, null until the reader is created
+     */
+    private volatile CountingInputStream in;
+
+    /**
+     * true once the connection has been closed
+     */
+    private boolean closed;
+
+    /**
+     * Create the connection
+     *
+     * @param socket     - the socket
+     * @param out        - the stream to the client, after the Handshake GREETING
+     *                   (which doubles as the object stream header) was written
+     * @param queue      - the queue requests wait in
+     * @param batching   - how the writer coalesces requests
+     * @param metrics    - the server's metrics
+     * @param events     - the server's event log
+     */
+    ObjectStreamConnection(Socket socket, OutputStream out, OutboundQueue queue, WriteBatching batching,
+                           ServerMetrics metrics, EventLog events) {
+        super(socket, queue, batching, metrics, events);
+        this.out = out;
+    }
+
+    /**
+     * Create the reader of the requests the client sends
+     *
+     * @param in - the stream from the client, starting with its object stream header
+     * @return the reader
+     * @throws IOException if the object stream header can't be read
+     */
+    RequestReader reader(InputStream in) throws IOException {
+        this.in = new CountingInputStream(in);
+        ObjectInputStream objectIn = new ObjectInputStream(this.in);
+        return () -> {
+            MessageRequest<?> request = (MessageRequest<?>) objectIn.readUnshared();
+            this.objectsRead++;
+            return request;
+        };
+    }
+
+    /**
+     * Write the shared serialization of a request
+     *
+     * @param request - the request
+     * @throws IOException if the request could not be written
+     */
+    @Override
+    void write(EncodedRequest request) throws IOException {
+        byte[] bytes = request.serialized();
+        this.out.write(bytes, 0, bytes.length);
+        this.objectsWritten++;
+        this.bytesWritten += bytes.length;
+    }
+
+    @Override
+    void flush() throws IOException {
+        this.out.flush();
+    }
+
+    /**
+     * Close the connection, logging what went over it
+     */
+    @Override
+    public void close() {
+        super.close();
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        CountingInputStream counted = this.in;
+        this.events.log(EventLog.Type.CLOSED, null, getRemoteAddress(), this.objectsWritten, this.bytesWritten,
+                this.objectsRead, counted == null ? 0 : counted.count);
+    }
+
+    /**
+     * Stream that counts the bytes read through it. Only read by the client's reader.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        /**
+         * The number of bytes read
+         */
+        private volatile long count;
+
+        /**
+         * @param in - the stream from the client
+         */
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                this.count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+    }
+}
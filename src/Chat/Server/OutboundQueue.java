@@ -0,0 +1,269 @@
+package Chat.Server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+/**
+ * Bounded queue of the requests waiting to be written to one client, so that
+ * a client that reads slowly only holds up itself. Requests are added by
+ * whichever thread is broadcasting and taken off by the client's writer.
+ * <p>
+ * Keeps count of how deep the queue has grown and how many requests were
+ * dropped because the client fell behind, and adds both to the server's
+ * metrics as they happen.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public final class OutboundQueue {
+
+    /**
+     * Default number of requests that can wait for a client
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The waiting requests, oldest first
+     */
+    private final ArrayDeque<EncodedRequest> requests;
+
+    /**
+     * The most requests that can wait at once
+     */
+    private final int capacity;
+
+    /**
+     * What to do when the queue is full
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * The server's metrics, null if the queue isn't counted in them
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * The most requests that have waited at once
+     */
+    private int maxDepth;
+
+    /**
+     * The number of requests dropped because the queue was full
+     */
+    private long dropped;
+
+    /**
+     * true once the queue will not take any more requests
+     */
+    private boolean closed;
+
+    /**
+     * Create the queue
+     *
+     * @param capacity - the most requests that can wait at once
+     * @param policy   - what to do when the queue is full
+     */
+    OutboundQueue(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, null);
+    }
+
+    /**
+     * Create a queue that is counted in the server's metrics
+     *
+     * @param capacity - the most requests that can wait at once
+     * @param policy   - what to do when the queue is full
+     * @param metrics  - the server's metrics, null if the queue isn't counted in them
+     */
+    OutboundQueue(int capacity, OverflowPolicy policy, ServerMetrics metrics) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+        this.requests = new ArrayDeque<>(Math.min(capacity, 64));
+        this.capacity = capacity;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Add a request to the end of the queue, applying the overflow policy if
+     * it is full. A client that can't be resynced is disconnected instead.
+     *
+     * @param request - the request
+     * @return false if the client has fallen too far behind and must be disconnected
+     */
+    boolean offer(EncodedRequest request) {
+        return offer(request, null);
+    }
+
+    /**
+     * Add one of a room's messages to the end of the queue, applying the
+     * overflow policy if it is full. Called on the room's worker, so under
+     * RESYNC the request that brings the client up to date with the room
+     * is built from the room as it is, and already holds the message.
+     *
+     * @param request - the request
+     * @param resync  - builds the request that brings the client up to date
+     *                with the request's room, or returns null if it can't
+     * @return false if the client has fallen too far behind and must be disconnected
+     */
+    synchronized boolean offer(EncodedRequest request, Supplier<EncodedRequest> resync) {
+        if (this.closed) {
+            return false;
+        }
+
+        if (this.requests.size() >= this.capacity) {
+            switch (this.policy) {
+                case DROP_OLDEST:
+                    this.requests.pollFirst();
+                    dropped(1);
+                    break;
+                case RESYNC:
+                    EncodedRequest current = resync == null ? null : resync.get();
+                    if (current != null) {
+                        // only the room's requests are replaced, the other rooms' are still sent
+                        dropped(dropRoom(request.getRoom()) + 1);
+                        this.requests.addLast(current);
+                        this.notifyAll();
+                        return true;
+                    }
+                    // nothing can bring the client up to date
+                    return disconnect();
+                case DISCONNECT:
+                    return disconnect();
+            }
+        }
+
+        this.requests.addLast(request);
+        if (this.requests.size() > this.maxDepth) {
+            this.maxDepth = this.requests.size();
+            if (this.metrics != null) {
+                this.metrics.queueDepth(this.maxDepth);
+            }
+        }
+        this.notifyAll();
+        return true;
+    }
+
+    /**
+     * Drop every waiting request and the one being offered, and close the
+     * queue so the client is disconnected
+     *
+     * @return false, for offer to return
+     */
+    private boolean disconnect() {
+        dropped(this.requests.size() + 1);
+        this.requests.clear();
+        this.closed = true;
+        this.notifyAll();
+        return false;
+    }
+
+    /**
+     * Remove the waiting requests that belong to a room, including an
+     * earlier resync, so a client that stays behind doesn't build up more
+     * than one resync for each of their rooms
+     *
+     * @param room - the name of the room
+     * @return the number of requests removed
+     */
+    private int dropRoom(String room) {
+        int removed = 0;
+        Iterator<EncodedRequest> waiting = this.requests.iterator();
+        while (waiting.hasNext()) {
+            if (room.equals(waiting.next().getRoom())) {
+                waiting.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Count requests dropped because the queue was full
+     *
+     * @param count - the number of requests
+     */
+    private void dropped(int count) {
+        this.dropped += count;
+        if (this.metrics != null) {
+            this.metrics.queueDropped(this.policy, count);
+        }
+    }
+
+    /**
+     * Take the oldest request without waiting
+     *
+     * @return the request, or null if there is none
+     */
+    synchronized EncodedRequest poll() {
+        return this.requests.pollFirst();
+    }
+
+    /**
+     * Take the oldest request, waiting until a deadline for one to be added
+     *
+     * @param deadline - the System.nanoTime() to stop waiting at
+     * @return the request, or null if there was none by the deadline or the queue is closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized EncodedRequest poll(long deadline) throws InterruptedException {
+        long remaining;
+        while (this.requests.isEmpty() && !this.closed && (remaining = deadline - System.nanoTime()) > 0) {
+            this.wait(remaining / 1000000, (int) (remaining % 1000000));
+        }
+        return this.requests.pollFirst();
+    }
+
+    /**
+     * Take the oldest request, waiting until there is one
+     *
+     * @return the request, or null once the queue is closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized EncodedRequest take() throws InterruptedException {
+        while (this.requests.isEmpty() && !this.closed) {
+            this.wait();
+        }
+        return this.requests.pollFirst();
+    }
+
+    /**
+     * Stop taking requests and wake up the writer
+     */
+    synchronized void close() {
+        this.closed = true;
+        this.requests.clear();
+        this.notifyAll();
+    }
+
+    /**
+     * Stop taking requests, but let the writer take the ones already waiting
+     */
+    synchronized void finish() {
+        this.closed = true;
+        this.notifyAll();
+    }
+
+    /**
+     * @return the number of requests waiting
+     */
+    public synchronized int getDepth() {
+        return this.requests.size();
+    }
+
+    /**
+     * @return the most requests that have waited at once
+     */
+    public synchronized int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * @return the number of requests dropped because the queue was full
+     */
+    public synchronized long getDropped() {
+        return this.dropped;
+    }
+}
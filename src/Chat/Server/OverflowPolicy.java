@@ -0,0 +1,30 @@
+package Chat.Server;
+
+/**
+ * What a client's OutboundQueue does when the client reads too slowly for
+ * the queue to keep up.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Drop the oldest queued request to make room for the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * Disconnect the client
+     */
+    DISCONNECT,
+
+    /**
+     * Drop what is queued for the room that overflowed and send the client
+     * the room's newest messages again, which already include the dropped
+     * ones. Requests that don't belong to a room, or clients that can't be
+     * sent the room again, are disconnected instead.
+     */
+    RESYNC
+}
@@ -0,0 +1,155 @@
+package Chat.Server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * The link that carries requests from this node to one of its peers in the
+ * cluster. Requests are queued and written by a thread of the link's own,
+ * which connects to the peer, and connects again whenever the link drops.
+ * <p>
+ * A request that was being written when the link dropped is lost, so a
+ * peer can miss messages while it is unreachable, until it notices the gap
+ * and asks for them.
+ * <p>
+ * Once connected, the link answers the peer's challenge with the cluster's
+ * secret (see ClusterNode) before it writes anything else.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+class PeerLink {
+
+    /**
+     * The most requests that can wait for the peer
+     */
+    static final int CAPACITY = 65536;
+
+    /**
+     * How long to wait before connecting again, in milliseconds
+     */
+    private static final long RETRY_DELAY = 1000;
+
+    /**
+     * The id of this node
+     */
+    private final int localId;
+
+    /**
+     * The id of the peer
+     */
+    private final int peerId;
+
+    /**
+     * The address of the peer's cluster port
+     */
+    private final InetSocketAddress address;
+
+    /**
+     * The secret every node in the cluster is given
+     */
+    private final byte[] secret;
+
+    /**
+     * Requests waiting to be written to the peer
+     */
+    private final OutboundQueue queue;
+
+    /**
+     * Create the link. Nothing is sent until it is started.
+     *
+     * @param localId - the id of this node
+     * @param peerId  - the id of the peer
+     * @param address - the address of the peer's cluster port
+     * @param secret  - the secret every node in the cluster is given
+     */
+    PeerLink(int localId, int peerId, InetSocketAddress address, byte[] secret) {
+        this.localId = localId;
+        this.peerId = peerId;
+        this.address = address;
+        this.secret = secret;
+        this.queue = new OutboundQueue(CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Start the link's writer
+     */
+    void start() {
+        Thread writer = new Thread(this::run, "peer-link-" + this.peerId);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a request for the peer. If the peer has fallen too far behind,
+     * the oldest request is dropped.
+     *
+     * @param request - the shared request to be sent
+     */
+    void send(EncodedRequest request) {
+        this.queue.offer(request);
+    }
+
+    /**
+     * Connect to the peer and write queued requests to it, connecting
+     * again whenever the link drops
+     */
+    private void run() {
+        boolean warned = false;
+        while (ChatServer.isRunning()) {
+            try (Socket socket = new Socket()) {
+                socket.connect(this.address);
+                socket.setTcpNoDelay(true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.write(ClusterNode.HELLO);
+                out.writeInt(this.localId);
+                out.flush();
+
+                socket.setSoTimeout(ClusterNode.HANDSHAKE_TIMEOUT);
+                byte[] challenge = new byte[ClusterNode.CHALLENGE_SIZE];
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                in.readFully(challenge);
+                out.write(ClusterNode.answer(this.secret, challenge, this.localId, this.peerId));
+                out.flush();
+                // don't write requests to a peer that has refused the link, they would be lost
+                if (in.read() != ClusterNode.ACCEPTED) {
+                    throw new IOException("node " + this.peerId + " refused the link, check the cluster's secret");
+                }
+                System.out.println("Linked to node " + this.peerId + " at " + this.address + ".");
+                warned = false;
+
+                EncodedRequest request;
+                while ((request = this.queue.take()) != null) {
+                    do {
+                        request.writeFrame(out);
+                    } while ((request = this.queue.poll()) != null);
+                    out.flush();
+                }
+                return;
+            } catch (IOException e) {
+                if (!warned) {
+                    System.out.println("Lost the link to node " + this.peerId + ", retrying: " + e.getMessage());
+                    warned = true;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                Thread.sleep(RETRY_DELAY);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "node " + this.peerId + " at " + this.address;
+    }
+}
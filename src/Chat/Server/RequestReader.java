@@ -0,0 +1,24 @@
+package Chat.Server;
+
+import Chat.MessageRequest;
+
+import java.io.IOException;
+
+/**
+ * Reads the requests a client sends, blocking until each one arrives.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+interface RequestReader {
+
+    /**
+     * Read the next request from the client
+     *
+     * @return the request
+     * @throws IOException            if the connection is lost
+     * @throws ClassNotFoundException if the request is not a known class
+     */
+    MessageRequest<?> read() throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,555 @@
+package Chat.Server;
+
+import Chat.ChatRoom;
+import Chat.HistoryPage;
+import Chat.MessageRequest;
+import Chat.UserMessage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * A named chat room on the server: its messages, the sessions that have
+ * joined it and the worker that puts its messages in order.
+ * <p>
+ * Every room is given to one of the server's workers, and everything that
+ * changes the room (a message being sent, a user joining or leaving) runs
+ * as a task on that worker. A room's messages are therefore strictly in
+ * order, while different rooms are handled on different cores.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+class Room {
+
+    /**
+     * What a room name may look like. Names are used as journal directory
+     * names, so they are lower case: names that differ only by case would
+     * share a directory on file systems that ignore case.
+     */
+    private static final Pattern NAME = Pattern.compile("[a-z0-9_-]{1,32}");
+
+    /**
+     * How long to wait for the owner to send missed messages before asking again, in nanoseconds
+     */
+    private static final long FETCH_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * The most relayed messages held back while missed ones are fetched.
+     * Past that, the missed messages are given up on.
+     */
+    private static final int MAX_HELD = 65536;
+
+    /**
+     * A relayed message held back until the messages before it have arrived
+     */
+    private static final class Held {
+
+        /**
+         * The message, with its sequence
+         */
+        private final UserMessage message;
+
+        /**
+         * The System.nanoTime() the message was handed to the room at
+         */
+        private final long queued;
+
+        /**
+         * @param message - the message, with its sequence
+         * @param queued  - the System.nanoTime() the message was handed to the room at
+         */
+        private Held(UserMessage message, long queued) {
+            this.message = message;
+            this.queued = queued;
+        }
+    }
+
+    /**
+     * The name of the room
+     */
+    private final String name;
+
+    /**
+     * The messages sent in the room
+     */
+    private final ChatRoom chatRoom;
+
+    /**
+     * Runs the room's tasks, in order. Shared with other rooms.
+     */
+    private final MessageSequencer<Runnable> worker;
+
+    /**
+     * Saves the room's messages, null if they aren't saved
+     */
+    private final MessageJournal journal;
+
+    /**
+     * The cluster the room is shared with, null if the server runs on its own
+     */
+    private final ClusterNode cluster;
+
+    /**
+     * Where the time taken to send messages to the members is recorded
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * The sessions that are sent the room's messages. Only changed by the worker.
+     */
+    private final ConcurrentHashMap<Session, Boolean> members;
+
+    /**
+     * The members as of the last time someone joined or left. Only used by the worker.
+     */
+    private Session[] snapshot;
+
+    /**
+     * When someone last joined, left or sent a message, as a System.nanoTime().
+     * Only changed by the worker.
+     */
+    private volatile long lastActive;
+
+    /**
+     * The room's messages as text, as sent to joining sessions that can't
+     * read history pages, or null if it hasn't been asked for since the
+     * last message. Shared so the text is only rendered, encoded and
+     * compressed once however many sessions join. Only used by the worker.
+     */
+    private EncodedRequest chatText;
+
+    /**
+     * The newest page of messages, as sent to joining sessions that have
+     * seen none, or null if it hasn't been asked for since the last
+     * message. Only used by the worker.
+     */
+    private EncodedRequest newestPage;
+
+    /**
+     * The newest page of messages, replacing what a member has, as sent to
+     * members that fell behind, or null if it hasn't been asked for since
+     * the last message. Only used by the worker.
+     */
+    private EncodedRequest resyncPage;
+
+    /**
+     * Brings a member that reads history pages back up to date
+     */
+    private final Supplier<EncodedRequest> pageResync;
+
+    /**
+     * Brings a member that reads the chat as text back up to date. Only the
+     * default room can be sent as text, other rooms return null.
+     */
+    private final Supplier<EncodedRequest> textResync;
+
+    /**
+     * Relayed messages that came after a gap, by sequence, held back until
+     * the owner has sent the missed ones. Only used by the worker.
+     */
+    private final TreeMap<Long, Held> held;
+
+    /**
+     * When the missed messages were last asked for, as a System.nanoTime(),
+     * or 0 if they aren't being fetched. Only used by the worker.
+     */
+    private long fetched;
+
+    /**
+     * Create the room, rebuilding its messages from its journal
+     *
+     * @param name    - the name of the room
+     * @param worker  - runs the room's tasks
+     * @param journal - saves the room's messages, null if they aren't saved
+     * @param cluster - the cluster the room is shared with, null if the server runs on its own
+     * @param metrics - where the time taken to send messages to the members is recorded
+     * @throws IOException if the journal can't be replayed
+     */
+    Room(String name, MessageSequencer<Runnable> worker, MessageJournal journal, ClusterNode cluster,
+         ServerMetrics metrics) throws IOException {
+        this.name = name;
+        this.chatRoom = new ChatRoom();
+        this.worker = worker;
+        this.journal = journal;
+        this.cluster = cluster;
+        this.metrics = metrics;
+        this.members = new ConcurrentHashMap<>();
+        this.snapshot = null;
+        this.lastActive = System.nanoTime();
+        this.pageResync = this::getResyncPage;
+        this.textResync = ChatRoom.DEFAULT_ROOM.equals(name) ? this::getChatText : () -> null;
+        this.held = new TreeMap<>();
+        this.fetched = 0;
+
+        if (journal != null) {
+            long next = journal.replay(message -> {
+                // the journal skips messages it failed to save
+                if (message.getSequence() != this.chatRoom.getNextIndex()) {
+                    this.chatRoom.startAt(message.getSequence());
+                }
+                message.setRoom(name);
+                this.chatRoom.addMessage(message);
+            });
+            if (next != this.chatRoom.getNextIndex()) {
+                this.chatRoom.startAt(next);
+            }
+        }
+    }
+
+    /**
+     * @param name - a room name sent by a client
+     * @return true if it can be used as the name of a room
+     */
+    static boolean isValidName(String name) {
+        return name != null && NAME.matcher(name).matches();
+    }
+
+    /**
+     * Room names sent by clients ignore case
+     *
+     * @param name - a room name sent by a client, or null
+     * @return the name in lower case, as the room is known by, or null
+     */
+    static String canonicalName(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the name of the room
+     */
+    String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the number of sessions in the room
+     */
+    int size() {
+        return this.members.size();
+    }
+
+    /**
+     * @param now  - the System.nanoTime() now
+     * @param idle - how long the room must have been quiet, in nanoseconds
+     * @return true if the room has no members and has been quiet for that long
+     */
+    boolean isIdle(long now, long idle) {
+        return this.members.isEmpty() && now - this.lastActive >= idle;
+    }
+
+    /**
+     * Run a task on the room's worker, after everything already queued for the room
+     *
+     * @param task - the task
+     */
+    void execute(Runnable task) {
+        this.worker.publish(task);
+    }
+
+    /**
+     * Put a message in order and send it to the room's members
+     *
+     * @param message - the message
+     */
+    void send(UserMessage message) {
+        long queued = System.nanoTime();
+        execute(() -> send(message, queued));
+    }
+
+    /**
+     * Put a message in order and send it to the room's members. Only called by the worker.
+     *
+     * @param message - the message
+     * @param queued  - the System.nanoTime() the message was handed to the room at
+     */
+    void send(UserMessage message, long queued) {
+        sequence(message, queued);
+    }
+
+    /**
+     * Add a message the room's owner node has put in order, and send it to
+     * the room's members. Only called by the worker.
+     * <p>
+     * If messages were missed while the link from the owner was down, the
+     * message is held back and the missed ones are asked for, so the
+     * members still get every message in order.
+     *
+     * @param message - the message, with its sequence
+     * @param queued  - the System.nanoTime() the message was handed to the room at
+     */
+    void apply(UserMessage message, long queued) {
+        if (message.getSequence() < this.chatRoom.getNextIndex()) {
+            // already have it
+            return;
+        }
+        message.setRoom(this.name);
+        if (message.getSequence() == this.chatRoom.getNextIndex() && this.held.isEmpty()) {
+            record(message, queued);
+            return;
+        }
+        this.held.put(message.getSequence(), new Held(message, queued));
+        if (this.held.size() > MAX_HELD) {
+            // the owner isn't answering, start over from what was relayed
+            this.chatRoom.startAt(this.held.firstKey());
+        }
+        catchUp();
+    }
+
+    /**
+     * Add the missed messages the room's owner node sent, then the relayed
+     * messages that were held back for them. Only called by the worker.
+     *
+     * @param page   - the missed messages, starting at the next sequence this room expects
+     * @param queued - the System.nanoTime() the page was handed to the room at
+     */
+    void fill(HistoryPage page, long queued) {
+        this.fetched = 0;
+        long next = this.chatRoom.getNextIndex();
+        if (page.getFirst() > next) {
+            // the owner no longer has them, so they are gone for good
+            this.chatRoom.startAt(page.getFirst());
+        }
+        for (UserMessage message : page.getMessages()) {
+            if (message.getSequence() == this.chatRoom.getNextIndex()) {
+                message.setRoom(this.name);
+                record(message, queued);
+            }
+        }
+        if (this.chatRoom.getNextIndex() == next && !this.held.isEmpty()) {
+            // the owner has nothing older than what was relayed
+            this.chatRoom.startAt(this.held.firstKey());
+        }
+        catchUp();
+    }
+
+    /**
+     * Send the held back messages that are now next in order, and ask the
+     * owner for the next run of missed messages if there is still a gap.
+     * Only called by the worker.
+     */
+    private void catchUp() {
+        while (!this.held.isEmpty()) {
+            long first = this.held.firstKey();
+            long next = this.chatRoom.getNextIndex();
+            if (first > next) {
+                break;
+            }
+            Held message = this.held.remove(first);
+            if (first == next) {
+                record(message.message, message.queued);
+            }
+        }
+        if (this.held.isEmpty()) {
+            this.fetched = 0;
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (this.fetched == 0 || now - this.fetched >= FETCH_TIMEOUT) {
+            this.fetched = now;
+            // a page ending here starts at the first message missed
+            long before = Math.min(this.held.firstKey(), this.chatRoom.getNextIndex() + HistoryPage.PAGE_SIZE);
+            this.cluster.fetch(this.name, before);
+        }
+    }
+
+    /**
+     * Add a session to the room, first sending it the messages it doesn't
+     * have yet. Only called by the worker, so the messages it is sent end
+     * exactly where the ones sent to the room's members start.
+     *
+     * @param session  - the session
+     * @param lastSeen - the sequence of the last message the session has seen,
+     *                 -1 if it has none, or null to send the whole chat as text
+     * @throws IOException if the messages can't be sent
+     */
+    void join(Session session, Long lastSeen) throws IOException {
+        ClientConnection connection = session.getConnection();
+        if (lastSeen == null) {
+            connection.send(getChatText());
+        } else if (lastSeen == -1) {
+            if (this.newestPage == null) {
+                this.newestPage = new EncodedRequest(new MessageRequest<>(MessageRequest.RequestType.HISTORY_PAGE, getHistoryAfter(-1)));
+            }
+            connection.send(this.newestPage);
+        } else {
+            connection.send(new MessageRequest<>(MessageRequest.RequestType.HISTORY_PAGE, getHistoryAfter(lastSeen)));
+        }
+        if (this.members.put(session, Boolean.TRUE) == null) {
+            this.snapshot = null;
+        }
+        this.lastActive = System.nanoTime();
+    }
+
+    /**
+     * Stop sending a session the room's messages. Only called by the worker.
+     *
+     * @param session - the session
+     */
+    void leave(Session session) {
+        if (this.members.remove(session) != null) {
+            this.snapshot = null;
+        }
+        this.lastActive = System.nanoTime();
+    }
+
+    /**
+     * Get the messages a session missed. If it missed too many, or its
+     * last seen sequence is not one this room gave out, it gets the
+     * newest page of messages to start over with instead.
+     *
+     * @param lastSeen - the sequence of the last message the session has seen, -1 if it has none
+     * @return the page
+     */
+    HistoryPage getHistoryAfter(long lastSeen) {
+        long oldest = this.chatRoom.getFirstIndex();
+        long next = this.chatRoom.getNextIndex();
+        long from = lastSeen + 1;
+        boolean replace = from < oldest || from > next || next - from > HistoryPage.PAGE_SIZE;
+        if (replace) {
+            from = Math.max(oldest, next - HistoryPage.PAGE_SIZE);
+        }
+        return historyPage(from, next, replace);
+    }
+
+    /**
+     * Get the page of messages that come just before a sequence
+     *
+     * @param before - the sequence the page should end before
+     * @return the page
+     */
+    HistoryPage getHistoryBefore(long before) {
+        long to = Math.max(0, Math.min(before, this.chatRoom.getNextIndex()));
+        return historyPage(to - HistoryPage.PAGE_SIZE, to, false);
+    }
+
+    /**
+     * Render the room's messages as text, for clients that can't read
+     * history pages. The text isn't kept.
+     *
+     * @return the room's messages as text
+     */
+    String getChatMessages() {
+        return this.chatRoom.renderText();
+    }
+
+    /**
+     * Get the room's messages as text, rendering them if they have changed.
+     * Only called by the worker.
+     *
+     * @return the CHAT_ROOM request
+     */
+    private EncodedRequest getChatText() {
+        if (this.chatText == null) {
+            this.chatText = new EncodedRequest(new MessageRequest<>(MessageRequest.RequestType.CHAT_ROOM, getChatMessages()),
+                    this.name);
+        }
+        return this.chatText;
+    }
+
+    /**
+     * Get the newest page of messages for a member that fell behind, which
+     * replaces the messages they have. Only called by the worker.
+     *
+     * @return the HISTORY_PAGE request
+     */
+    private EncodedRequest getResyncPage() {
+        if (this.resyncPage == null) {
+            long next = this.chatRoom.getNextIndex();
+            HistoryPage page = historyPage(Math.max(this.chatRoom.getFirstIndex(), next - HistoryPage.PAGE_SIZE), next, true);
+            this.resyncPage = new EncodedRequest(new MessageRequest<>(MessageRequest.RequestType.HISTORY_PAGE, page));
+        }
+        return this.resyncPage;
+    }
+
+    /**
+     * Force the room's journal to the disk and close it
+     */
+    void close() {
+        if (this.journal != null) {
+            this.journal.close();
+        }
+    }
+
+    /**
+     * Build a page of the messages in [from, to) the room still has
+     *
+     * @param from    - the sequence of the first message
+     * @param to      - the sequence after the last message
+     * @param replace - true if the client should start over with the page
+     * @return the page
+     */
+    private HistoryPage historyPage(long from, long to, boolean replace) {
+        List<UserMessage> messages = this.chatRoom.getMessages(from, to);
+        long oldest = this.chatRoom.getFirstIndex();
+        // old messages may have been evicted while the page was being built
+        long first = messages.isEmpty() ? Math.max(from, oldest) : messages.get(0).getSequence();
+        return new HistoryPage(this.name, messages, first, oldest, replace);
+    }
+
+    /**
+     * Give a message its sequence number, add it to the room and send it
+     * to the members and the other nodes. Only called by the worker.
+     *
+     * @param message - the message
+     * @param queued  - the System.nanoTime() the message was handed to the room at
+     */
+    private void sequence(UserMessage message, long queued) {
+        message.setRoom(this.name);
+        message.setSequence(this.chatRoom.getNextIndex());
+        EncodedRequest request = record(message, queued);
+        if (this.cluster != null) {
+            this.cluster.relay(request);
+        }
+    }
+
+    /**
+     * Save a message that has its sequence number, add it to the room and
+     * send it to the members. Only called by the worker.
+     *
+     * @param message - the message
+     * @param queued  - the System.nanoTime() the message was handed to the room at
+     * @return the MESSAGE_SENT request that was sent
+     */
+    private EncodedRequest record(UserMessage message, long queued) {
+        if (this.journal != null) {
+            try {
+                this.journal.append(message);
+            } catch (IOException e) {
+                // still send the message, it just won't be there after a restart
+                e.printStackTrace();
+            }
+        }
+        this.chatRoom.addMessage(message);
+        this.chatText = null;
+        this.newestPage = null;
+        this.resyncPage = null;
+        this.lastActive = System.nanoTime();
+
+        // encoded once, and the same bytes are written to every member
+        EncodedRequest request = new EncodedRequest(new MessageRequest<>(MessageRequest.RequestType.MESSAGE_SENT, message));
+        Session[] members = this.snapshot;
+        if (members == null) {
+            members = this.members.keySet().toArray(new Session[0]);
+            this.snapshot = members;
+        }
+        for (Session member : members) {
+            try {
+                // only queues the request, the member's own writer sends it
+                member.getConnection().send(request, member.readsHistory() ? this.pageResync : this.textResync);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        this.metrics.fannedOut(members.length, System.nanoTime() - queued);
+        return request;
+    }
+}
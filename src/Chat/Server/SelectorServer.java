@@ -0,0 +1,89 @@
+package Chat.Server;
+
+import Chat.Protocol.WriteBatching;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking transport for the ChatServer. Clients are accepted on the
+ * calling thread and spread across a fixed number of EventLoops, instead of
+ * each client getting a thread of its own. Clients that send serialized
+ * objects can't be read without blocking, so they still get a (virtual)
+ * thread of their own.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+class SelectorServer {
+
+    /**
+     * The event loops clients are spread across
+     */
+    private final EventLoop[] loops;
+
+    /**
+     * Sets the socket options of each client
+     */
+    private final WriteBatching batching;
+
+    /**
+     * Where new connections are logged
+     */
+    private final EventLog events;
+
+    /**
+     * Create the transport
+     *
+     * @param server  - the ChatServer itself
+     * @param threads - the number of event loops to run
+     * @throws IOException if a selector could not be opened
+     */
+    SelectorServer(ChatServer server, int threads) throws IOException {
+        this.loops = new EventLoop[threads];
+        this.batching = server.getWriteBatching();
+        this.events = server.getEvents();
+        Executor legacySessions = SessionExecutors.virtualThreadPerTask();
+        for (int i = 0; i < threads; i++) {
+            this.loops[i] = new EventLoop(server, legacySessions);
+        }
+    }
+
+    /**
+     * Start the event loops and accept clients until the server stops
+     *
+     * @param port - the port to listen on
+     * @throws IOException if the port could not be listened on
+     */
+    void listen(int port) throws IOException {
+        for (int i = 0; i < this.loops.length; i++) {
+            Thread thread = new Thread(this.loops[i], "event-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port), ChatServer.ACCEPT_BACKLOG);
+            System.out.println("The server is listening with " + this.loops.length + " event loops...");
+
+            int next = 0;
+            while (ChatServer.isRunning()) {
+                SocketChannel channel = serverChannel.accept();
+                try {
+                    this.events.log(EventLog.Type.CONNECTED, null, channel.socket().getRemoteSocketAddress());
+                    this.batching.configure(channel.socket());
+                    channel.configureBlocking(false);
+                    this.loops[next].register(channel);
+                    next = (next + 1) % this.loops.length;
+                } catch (IOException e) {
+                    channel.close();
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package Chat.Server;
+
+import Chat.MessageRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * A reusable buffer and object stream that requests are serialized into for
+ * legacy clients. Each thread that serializes has one of its own, so a
+ * broadcast doesn't allocate a new stream, with its block buffer and handle
+ * table, for every request.
+ * <p>
+ * The stream is reset before every request, which keeps its handle table
+ * from growing and makes each piece self-contained. A buffer that a large
+ * request has grown past MAX_RETAINED is dropped rather than kept around.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+final class SerializationBuffer {
+
+    /**
+     * Starting size of the buffer
+     */
+    private static final int INITIAL_SIZE = 1024;
+
+    /**
+     * The largest buffer that is kept for the next request
+     */
+    private static final int MAX_RETAINED = 64 * 1024;
+
+    /**
+     * The buffer of the calling thread
+     */
+    private static final ThreadLocal<SerializationBuffer> BUFFERS = ThreadLocal.withInitial(SerializationBuffer::new);
+
+    /**
+     * The bytes of the request being serialized
+     */
+    private Bytes bytes;
+
+    /**
+     * Writes requests into the bytes
+     */
+    private ObjectOutputStream out;
+
+    /**
+     * Create an empty buffer. The stream is created the first time it is used.
+     */
+    private SerializationBuffer() {
+    }
+
+    /**
+     * Serialize a request so that the bytes can be dropped into the middle
+     * of any client's object stream. The bytes start with a reset, so they
+     * don't refer back to anything the client has already read.
+     *
+     * @param request - the request
+     * @return the serialized bytes
+     * @throws IOException if the request can't be serialized
+     */
+    static byte[] serialize(MessageRequest<?> request) throws IOException {
+        return BUFFERS.get().write(request);
+    }
+
+    /**
+     * Serialize a request with this thread's stream
+     *
+     * @param request - the request
+     * @return the serialized bytes
+     * @throws IOException if the request can't be serialized
+     */
+    private byte[] write(MessageRequest<?> request) throws IOException {
+        if (this.out == null) {
+            this.bytes = new Bytes();
+            this.out = new HeaderlessObjectOutputStream(this.bytes);
+        }
+        this.bytes.reset();
+        try {
+            this.out.reset();
+            this.out.writeUnshared(request);
+            this.out.flush();
+        } catch (IOException e) {
+            // the stream may have been left half way through an object
+            this.out = null;
+            throw e;
+        }
+        byte[] serialized = this.bytes.toByteArray();
+
+        if (this.bytes.capacity() > MAX_RETAINED) {
+            this.out = null;
+        }
+        return serialized;
+    }
+
+    /**
+     * ByteArrayOutputStream that tells how big its buffer has grown
+     */
+    private static class Bytes extends ByteArrayOutputStream {
+
+        /**
+         * Create the bytes
+         */
+        Bytes() {
+            super(INITIAL_SIZE);
+        }
+
+        /**
+         * @return the size of the buffer
+         */
+        int capacity() {
+            return this.buf.length;
+        }
+    }
+
+    /**
+     * ObjectOutputStream that leaves out the stream header, because the
+     * handshake already sent it.
+     */
+    private static class HeaderlessObjectOutputStream extends ObjectOutputStream {
+
+        /**
+         * @param out - the stream the requests are written to
+         * @throws IOException if the stream could not be set up
+         */
+        HeaderlessObjectOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void writeStreamHeader() {
+            // already written by the handshake
+        }
+    }
+}
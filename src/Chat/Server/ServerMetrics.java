@@ -0,0 +1,702 @@
+package Chat.Server;
+
+import Chat.LatencyHistogram;
+import Chat.Protocol.FlushStats;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The server's counters and histograms.
+ * <p>
+ * Everything is recorded into LongAdders and LatencyHistograms, which
+ * stripe their counts across cells, so the threads recording never wait
+ * on each other and the cost of a metric is a few uncontended adds. The
+ * metrics are read through JMX (see ServerMetricsMBean) and as plain text
+ * by the MetricsEndpoint.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+    /**
+     * The name the metrics are registered under with JMX
+     */
+    public static final String OBJECT_NAME = "Chat.Server:type=ServerMetrics";
+
+    /**
+     * The percentiles given for each histogram in the plain text
+     */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * The shortest time the message rates are measured over, in nanoseconds
+     */
+    private static final long RATE_WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The number of users furthest behind whose OutboundQueues are given
+     */
+    static final int DEEPEST_QUEUES = 10;
+
+    /**
+     * How one user's OutboundQueue stood when the metrics were read
+     */
+    private static final class QueueSample {
+
+        /**
+         * The username
+         */
+        private final String user;
+
+        /**
+         * The number of requests waiting
+         */
+        private final int depth;
+
+        /**
+         * The most requests that have waited at once
+         */
+        private final int maxDepth;
+
+        /**
+         * The number of requests dropped
+         */
+        private final long dropped;
+
+        /**
+         * @param user  - the username
+         * @param queue - the user's queue
+         */
+        private QueueSample(String user, OutboundQueue queue) {
+            this.user = user;
+            this.depth = queue.getDepth();
+            this.maxDepth = queue.getMaxDepth();
+            this.dropped = queue.getDropped();
+        }
+    }
+
+    /**
+     * Counts the users signed in
+     */
+    private final IntSupplier activeSessions;
+
+    /**
+     * Gets the signed in users' sessions, for their OutboundQueues
+     */
+    private final Supplier<Collection<Session>> sessions;
+
+    /**
+     * The number of users that have signed in
+     */
+    private final LongAdder logins;
+
+    /**
+     * The number of sign ins turned down because the username was taken
+     */
+    private final LongAdder userAlreadyExists;
+
+    /**
+     * The number of sign ins turned down because the username was empty
+     */
+    private final LongAdder invalidUsername;
+
+    /**
+     * The number of messages sent to the server
+     */
+    private final LongAdder messagesIn;
+
+    /**
+     * The number of messages sent to room members
+     */
+    private final LongAdder messagesOut;
+
+    /**
+     * The number of bytes read from clients
+     */
+    private final LongAdder bytesIn;
+
+    /**
+     * The number of bytes written to clients
+     */
+    private final LongAdder bytesOut;
+
+    /**
+     * The time from a message being handed to its room until every member has it queued
+     */
+    private final LatencyHistogram fanoutLatency;
+
+    /**
+     * The time senders spend in enterMessageChanges
+     */
+    private final LatencyHistogram sendWait;
+
+    /**
+     * The times connections' writers were held up by their clients
+     */
+    private final LatencyHistogram writeStall;
+
+    /**
+     * Counts the requests written to clients in each flush
+     */
+    private final FlushStats flushStats;
+
+    /**
+     * The most requests that have waited in any client's OutboundQueue at once
+     */
+    private final AtomicInteger queueMaxDepth;
+
+    /**
+     * The requests dropped from full OutboundQueues, by the OverflowPolicy that dropped them
+     */
+    private final LongAdder[] queueDrops;
+
+    /**
+     * When the message rates were last measured, as a System.nanoTime()
+     */
+    private long sampledAt;
+
+    /**
+     * The messages in when the rates were last measured
+     */
+    private long sampledIn;
+
+    /**
+     * The messages out when the rates were last measured
+     */
+    private long sampledOut;
+
+    /**
+     * The messages in a second, as last measured
+     */
+    private double inPerSecond;
+
+    /**
+     * The messages out a second, as last measured
+     */
+    private double outPerSecond;
+
+    /**
+     * Create the metrics
+     *
+     * @param activeSessions - counts the users signed in
+     */
+    public ServerMetrics(IntSupplier activeSessions) {
+        this(activeSessions, Collections::emptyList);
+    }
+
+    /**
+     * Create the metrics, including those of each user's OutboundQueue
+     *
+     * @param activeSessions - counts the users signed in
+     * @param sessions       - gets the signed in users' sessions
+     */
+    ServerMetrics(IntSupplier activeSessions, Supplier<Collection<Session>> sessions) {
+        this.activeSessions = activeSessions;
+        this.sessions = sessions;
+        this.logins = new LongAdder();
+        this.userAlreadyExists = new LongAdder();
+        this.invalidUsername = new LongAdder();
+        this.messagesIn = new LongAdder();
+        this.messagesOut = new LongAdder();
+        this.bytesIn = new LongAdder();
+        this.bytesOut = new LongAdder();
+        this.fanoutLatency = new LatencyHistogram();
+        this.sendWait = new LatencyHistogram();
+        this.writeStall = new LatencyHistogram();
+        this.flushStats = new FlushStats();
+        this.queueMaxDepth = new AtomicInteger();
+        this.queueDrops = new LongAdder[OverflowPolicy.values().length];
+        for (int i = 0; i < this.queueDrops.length; i++) {
+            this.queueDrops[i] = new LongAdder();
+        }
+        this.sampledAt = System.nanoTime();
+    }
+
+    /**
+     * Make the metrics visible through JMX
+     */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // the metrics are still served as text
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A user signed in
+     */
+    void login() {
+        this.logins.increment();
+    }
+
+    /**
+     * A user was turned down because their username was taken
+     */
+    void userAlreadyExists() {
+        this.userAlreadyExists.increment();
+    }
+
+    /**
+     * A user was turned down because their username was empty
+     */
+    void invalidUsername() {
+        this.invalidUsername.increment();
+    }
+
+    /**
+     * A message was sent to the server
+     *
+     * @param waited - the time the sender spent handing it to its room, in nanoseconds
+     */
+    void messageIn(long waited) {
+        this.messagesIn.increment();
+        this.sendWait.record(waited);
+    }
+
+    /**
+     * A message was queued for every member of its room
+     *
+     * @param members - the number of members
+     * @param latency - the time since it was handed to the room, in nanoseconds
+     */
+    void fannedOut(int members, long latency) {
+        this.messagesOut.add(members);
+        this.fanoutLatency.record(latency);
+    }
+
+    /**
+     * A connection's writer was held up by its client
+     *
+     * @param nanos - for how long, in nanoseconds
+     */
+    void writeStalled(long nanos) {
+        this.writeStall.record(nanos);
+    }
+
+    /**
+     * A client's OutboundQueue grew deeper than it had been before
+     *
+     * @param depth - the number of requests waiting in it
+     */
+    void queueDepth(int depth) {
+        int max;
+        while (depth > (max = this.queueMaxDepth.get()) && !this.queueMaxDepth.compareAndSet(max, depth)) {
+            // another queue grew at the same time, try again
+        }
+    }
+
+    /**
+     * Requests were dropped because a client's OutboundQueue was full
+     *
+     * @param policy - the policy of the queue
+     * @param count  - the number of requests
+     */
+    void queueDropped(OverflowPolicy policy, int count) {
+        this.queueDrops[policy.ordinal()].add(count);
+    }
+
+    /**
+     * Bytes were read from a client
+     *
+     * @param count - the number of bytes
+     */
+    void bytesIn(long count) {
+        this.bytesIn.add(count);
+    }
+
+    /**
+     * Bytes were written to a client
+     *
+     * @param count - the number of bytes
+     */
+    void bytesOut(long count) {
+        this.bytesOut.add(count);
+    }
+
+    /**
+     * @param in - a stream from a client
+     * @return the stream, counting the bytes read from it
+     */
+    InputStream meter(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesIn(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    bytesIn(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * @param out - a stream to a client
+     * @return the stream, counting the bytes written to it
+     */
+    OutputStream meter(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                this.out.write(b);
+                bytesOut(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+                bytesOut(len);
+            }
+        };
+    }
+
+    /**
+     * @return the counts of the requests written to clients in each flush
+     */
+    FlushStats getFlushStats() {
+        return this.flushStats;
+    }
+
+    @Override
+    public int getActiveSessions() {
+        return this.activeSessions.getAsInt();
+    }
+
+    @Override
+    public long getLogins() {
+        return this.logins.sum();
+    }
+
+    @Override
+    public long getUserAlreadyExistsRejections() {
+        return this.userAlreadyExists.sum();
+    }
+
+    @Override
+    public long getInvalidUsernameRejections() {
+        return this.invalidUsername.sum();
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return this.messagesIn.sum();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return this.messagesOut.sum();
+    }
+
+    @Override
+    public synchronized double getMessagesInPerSecond() {
+        sampleRates();
+        return this.inPerSecond;
+    }
+
+    @Override
+    public synchronized double getMessagesOutPerSecond() {
+        sampleRates();
+        return this.outPerSecond;
+    }
+
+    @Override
+    public long getBytesIn() {
+        return this.bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return this.bytesOut.sum();
+    }
+
+    @Override
+    public double getFanoutLatencyMedian() {
+        return this.fanoutLatency.getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getFanoutLatency99() {
+        return this.fanoutLatency.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getSendWait99() {
+        return this.sendWait.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getSendWaitMax() {
+        return this.sendWait.getMax() / 1e6;
+    }
+
+    @Override
+    public double getWriteStall99() {
+        return this.writeStall.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getWriteStallMax() {
+        return this.writeStall.getMax() / 1e6;
+    }
+
+    @Override
+    public int getQueueMaxDepth() {
+        return this.queueMaxDepth.get();
+    }
+
+    @Override
+    public long getQueueDrops() {
+        long total = 0;
+        for (LongAdder drops : this.queueDrops) {
+            total += drops.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getQueueDropsByPolicy() {
+        Map<String, Long> drops = new LinkedHashMap<>();
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            drops.put(policy.name(), this.queueDrops[policy.ordinal()].sum());
+        }
+        return drops;
+    }
+
+    @Override
+    public Map<String, Integer> getDeepestQueues() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        for (QueueSample sample : sampleQueues()) {
+            depths.put(sample.user, sample.depth);
+        }
+        return depths;
+    }
+
+    @Override
+    public Map<String, Long> getDeepestQueueDrops() {
+        Map<String, Long> drops = new LinkedHashMap<>();
+        for (QueueSample sample : sampleQueues()) {
+            drops.put(sample.user, sample.dropped);
+        }
+        return drops;
+    }
+
+    /**
+     * Look at every signed in user's OutboundQueue as it is now
+     *
+     * @return the DEEPEST_QUEUES users furthest behind, deepest first, then by the most dropped
+     */
+    private List<QueueSample> sampleQueues() {
+        List<QueueSample> samples = new ArrayList<>();
+        for (Session session : this.sessions.get()) {
+            OutboundQueue queue = session.getConnection().getOutboundQueue();
+            if (queue != null) {
+                samples.add(new QueueSample(session.getUsername(), queue));
+            }
+        }
+        samples.sort((a, b) -> a.depth != b.depth ? Integer.compare(b.depth, a.depth) : Long.compare(b.dropped, a.dropped));
+        return samples.size() > DEEPEST_QUEUES ? samples.subList(0, DEEPEST_QUEUES) : samples;
+    }
+
+    @Override
+    public long getHeapUsed() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Override
+    public long getHeapMax() {
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    @Override
+    public int getPlatformThreads() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    /**
+     * Measure the message rates again, if the last time was long enough ago
+     * to give a steady number. Only called while holding the lock.
+     */
+    private void sampleRates() {
+        long now = System.nanoTime();
+        long elapsed = now - this.sampledAt;
+        if (elapsed < RATE_WINDOW) {
+            return;
+        }
+        long in = this.messagesIn.sum();
+        long out = this.messagesOut.sum();
+        this.inPerSecond = (in - this.sampledIn) * 1e9 / elapsed;
+        this.outPerSecond = (out - this.sampledOut) * 1e9 / elapsed;
+        this.sampledAt = now;
+        this.sampledIn = in;
+        this.sampledOut = out;
+    }
+
+    /**
+     * Write the metrics in the Prometheus text format, which is also easy
+     * to read by eye. Times are in seconds.
+     *
+     * @return the metrics
+     */
+    @Override
+    public String getText() {
+        StringBuilder text = new StringBuilder(2048);
+        gauge(text, "partychat_active_sessions", "Users signed in", getActiveSessions());
+        counter(text, "partychat_logins_total", "Users that have signed in", getLogins());
+        text.append("# HELP partychat_login_rejections_total Sign ins turned down, by reason\n")
+                .append("# TYPE partychat_login_rejections_total counter\n")
+                .append("partychat_login_rejections_total{reason=\"USER_ALREADY_EXISTS\"} ")
+                .append(getUserAlreadyExistsRejections()).append('\n')
+                .append("partychat_login_rejections_total{reason=\"INVALID_USERNAME\"} ")
+                .append(getInvalidUsernameRejections()).append('\n');
+        counter(text, "partychat_messages_in_total", "Messages sent to the server", getMessagesIn());
+        counter(text, "partychat_messages_out_total", "Messages sent to room members", getMessagesOut());
+        gauge(text, "partychat_messages_in_per_second", "Messages sent to the server a second", getMessagesInPerSecond());
+        gauge(text, "partychat_messages_out_per_second", "Messages sent to room members a second", getMessagesOutPerSecond());
+        counter(text, "partychat_bytes_in_total", "Bytes read from clients", getBytesIn());
+        counter(text, "partychat_bytes_out_total", "Bytes written to clients", getBytesOut());
+        counter(text, "partychat_flushes_total", "Flushes of requests to clients", this.flushStats.getFlushes());
+        counter(text, "partychat_frames_written_total", "Requests written to clients", this.flushStats.getFrames());
+        gauge(text, "partychat_queue_max_depth", "Most requests that have waited for any client at once",
+                getQueueMaxDepth());
+        text.append("# HELP partychat_queue_dropped_total Requests dropped because a client fell behind, by overflow policy\n")
+                .append("# TYPE partychat_queue_dropped_total counter\n");
+        for (Map.Entry<String, Long> drops : getQueueDropsByPolicy().entrySet()) {
+            text.append("partychat_queue_dropped_total{policy=\"").append(drops.getKey()).append("\"} ")
+                    .append(drops.getValue()).append('\n');
+        }
+        List<QueueSample> deepest = sampleQueues();
+        text.append("# HELP partychat_session_queue_depth Requests waiting for the users furthest behind\n")
+                .append("# TYPE partychat_session_queue_depth gauge\n");
+        for (QueueSample sample : deepest) {
+            userSample(text, "partychat_session_queue_depth", sample.user, sample.depth);
+        }
+        text.append("# HELP partychat_session_queue_max_depth Most requests that have waited at once for the same users\n")
+                .append("# TYPE partychat_session_queue_max_depth gauge\n");
+        for (QueueSample sample : deepest) {
+            userSample(text, "partychat_session_queue_max_depth", sample.user, sample.maxDepth);
+        }
+        text.append("# HELP partychat_session_queue_dropped_total Requests dropped for the same users\n")
+                .append("# TYPE partychat_session_queue_dropped_total counter\n");
+        for (QueueSample sample : deepest) {
+            userSample(text, "partychat_session_queue_dropped_total", sample.user, sample.dropped);
+        }
+        summary(text, "partychat_fanout_latency_seconds",
+                "Time from a message being handed to its room until every member has it queued", this.fanoutLatency);
+        summary(text, "partychat_send_wait_seconds", "Time senders spend in enterMessageChanges", this.sendWait);
+        summary(text, "partychat_write_stall_seconds", "Times connections' writers were held up by their clients",
+                this.writeStall);
+        gauge(text, "partychat_heap_used_bytes", "Bytes of heap in use, including uncollected garbage", getHeapUsed());
+        gauge(text, "partychat_heap_max_bytes", "Most bytes of heap the server may use", getHeapMax());
+        gauge(text, "partychat_platform_threads", "Live platform threads", getPlatformThreads());
+        return text.toString();
+    }
+
+    /**
+     * Write a counter
+     *
+     * @param text  - the text
+     * @param name  - the name of the counter
+     * @param help  - what it counts
+     * @param value - its value
+     */
+    private static void counter(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" counter\n")
+                .append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Write a gauge
+     *
+     * @param text  - the text
+     * @param name  - the name of the gauge
+     * @param help  - what it measures
+     * @param value - its value
+     */
+    private static void gauge(StringBuilder text, String name, String help, double value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" gauge\n")
+                .append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Write one user's value of a metric, with the username as its label
+     *
+     * @param text  - the text
+     * @param name  - the name of the metric
+     * @param user  - the username, which a client chose
+     * @param value - the value
+     */
+    private static void userSample(StringBuilder text, String name, String user, long value) {
+        text.append(name).append("{user=\"");
+        for (int i = 0; i < user.length(); i++) {
+            char c = user.charAt(i);
+            if (c == '\\' || c == '"') {
+                text.append('\\').append(c);
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else {
+                text.append(c);
+            }
+        }
+        text.append("\"} ").append(value).append('\n');
+    }
+
+    /**
+     * Write the percentiles, sum and count of a histogram of nanoseconds, in seconds
+     *
+     * @param text      - the text
+     * @param name      - the name of the histogram
+     * @param help      - what it measures
+     * @param histogram - the histogram
+     */
+    private static void summary(StringBuilder text, String name, String help, LatencyHistogram histogram) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" summary\n");
+        for (double quantile : QUANTILES) {
+            text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtPercentile(quantile * 100) / 1e9).append('\n');
+        }
+        text.append(name).append("_sum ").append(histogram.getSum() / 1e9).append('\n')
+                .append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sessions=%d logins=%d messages in=%d out=%d bytes in=%d out=%d queue max=%d dropped=%d",
+                getActiveSessions(), getLogins(), getMessagesIn(), getMessagesOut(), getBytesIn(), getBytesOut(),
+                getQueueMaxDepth(), getQueueDrops());
+    }
+}
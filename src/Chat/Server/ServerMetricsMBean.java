@@ -0,0 +1,139 @@
+package Chat.Server;
+
+import java.util.Map;
+
+/**
+ * The server's metrics as seen through JMX, for instance in JConsole under
+ * Chat.Server:type=ServerMetrics. Times are in milliseconds.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public interface ServerMetricsMBean {
+
+    /**
+     * @return the number of users signed in
+     */
+    int getActiveSessions();
+
+    /**
+     * @return the number of users that have signed in
+     */
+    long getLogins();
+
+    /**
+     * @return the number of sign ins turned down because the username was taken
+     */
+    long getUserAlreadyExistsRejections();
+
+    /**
+     * @return the number of sign ins turned down because the username was empty
+     */
+    long getInvalidUsernameRejections();
+
+    /**
+     * @return the number of messages sent to the server
+     */
+    long getMessagesIn();
+
+    /**
+     * @return the number of messages the server has sent to room members
+     */
+    long getMessagesOut();
+
+    /**
+     * @return the number of messages sent to the server a second, over the last second or so
+     */
+    double getMessagesInPerSecond();
+
+    /**
+     * @return the number of messages sent to room members a second, over the last second or so
+     */
+    double getMessagesOutPerSecond();
+
+    /**
+     * @return the number of bytes read from clients
+     */
+    long getBytesIn();
+
+    /**
+     * @return the number of bytes written to clients
+     */
+    long getBytesOut();
+
+    /**
+     * @return the median time from a message being handed to its room until every member has it queued
+     */
+    double getFanoutLatencyMedian();
+
+    /**
+     * @return the 99th percentile time from a message being handed to its room until every member has it queued
+     */
+    double getFanoutLatency99();
+
+    /**
+     * @return the 99th percentile time a sender spent in enterMessageChanges
+     */
+    double getSendWait99();
+
+    /**
+     * @return the longest time a sender spent in enterMessageChanges
+     */
+    double getSendWaitMax();
+
+    /**
+     * @return the 99th percentile time a connection's writer was held up by its client
+     */
+    double getWriteStall99();
+
+    /**
+     * @return the longest time a connection's writer was held up by its client
+     */
+    double getWriteStallMax();
+
+    /**
+     * @return the most requests that have waited in any client's queue at once
+     */
+    int getQueueMaxDepth();
+
+    /**
+     * @return the requests dropped because a client fell too far behind
+     */
+    long getQueueDrops();
+
+    /**
+     * @return the requests dropped because a client fell too far behind, by the name of the overflow policy
+     */
+    Map<String, Long> getQueueDropsByPolicy();
+
+    /**
+     * @return the requests waiting for the users who are furthest behind right now, by username, deepest first
+     */
+    Map<String, Integer> getDeepestQueues();
+
+    /**
+     * @return the requests dropped so far for the same users as getDeepestQueues, by username
+     */
+    Map<String, Long> getDeepestQueueDrops();
+
+    /**
+     * @return the bytes of heap in use, including garbage not collected yet
+     */
+    long getHeapUsed();
+
+    /**
+     * @return the most bytes of heap the server may use
+     */
+    long getHeapMax();
+
+    /**
+     * @return the number of live platform threads, which doesn't include virtual threads
+     */
+    int getPlatformThreads();
+
+    /**
+     * @return the metrics in the plain-text format of the scrape endpoint
+     */
+    String getText();
+}
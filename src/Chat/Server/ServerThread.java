@@ -1,22 +1,23 @@
 package Chat.Server;
 
+import Chat.HistoryPage;
+import Chat.HistoryRequest;
 import Chat.MessageRequest;
 import Chat.UserMessage;
 import Chat.MessageProtocol;
 import Chat.Users;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
 
 /**
- * Thread that allows for the server to be multithreaded
+ * A client's session with the server. When run on a thread of its own it
+ * reads the client's requests itself; when the client is served by an
+ * EventLoop, the loop hands it each request instead.
  *
  * @author Samuel Tregea
  * <p>
- * Last Date Modified: January2, 2019
+ * Last Date Modified: October 18, 2026
  */
-public class ServerThread extends Thread {
+public class ServerThread implements Runnable {
 
     /**
      * The server
@@ -26,23 +27,23 @@ public class ServerThread extends Thread {
     /**
      * allows for sending out objects to clients
      **/
-    private ObjectOutputStream out;
+    private ClientConnection connection;
 
     /**
-     * allows for reading in objects
+     * allows for reading in requests, null when served by an EventLoop
      **/
-    private ObjectInputStream in;
-
-    /**
-     * the socket that connects to the client
-     **/
-    private Socket socket;
+    private RequestReader in;
 
     /**
      * the username of the client
      */
     private String username;
 
+    /**
+     * the client's session, null until they have signed in
+     */
+    private volatile Session session;
+
     /**
      * if server is running
      */
@@ -51,39 +52,91 @@ public class ServerThread extends Thread {
     /**
      * Create the thread
      *
-     * @param s      - the socket
-     * @param out    - the ObjectOutputStream
-     * @param in     - the ObjectInputStream
-     * @param server - the ChatServer itself
+     * @param connection - the connection to the client
+     * @param in         - reads the client's requests
+     * @param server     - the ChatServer itself
      */
-    ServerThread(Socket s, ObjectOutputStream out, ObjectInputStream in, ChatServer server) {
+    ServerThread(ClientConnection connection, RequestReader in, ChatServer server) {
         this.in = in;
-        this.out = out;
-        this.socket = s;
+        this.connection = connection;
         this.serverIsRunning = true;
         chatServer = server;
     }
 
+    /**
+     * Create a session for a client served by an EventLoop
+     *
+     * @param connection - the connection to the client
+     * @param server     - the ChatServer itself
+     */
+    ServerThread(ClientConnection connection, ChatServer server) {
+        this(connection, null, server);
+    }
+
     /**
      * Run the thread and handle the messages from the client
      */
     @Override
     public void run() {
         if (serverIsRunning) {
-            do {
-                MessageRequest messageRequest = null;
-                try {
-                    messageRequest = (MessageRequest<?>) in.readUnshared();
-                } catch (IOException e) {
-                    System.out.println(username + " signed out");
-                    this.chatServer.removeUser(username);
-                } catch (ClassNotFoundException e) {
-                    e.printStackTrace();
+            boolean rejected = false;
+            try {
+                do {
+                    MessageRequest<?> messageRequest = null;
+                    try {
+                        messageRequest = in.read();
+                    } catch (IOException e) {
+                        // the client is gone
+                        return;
+                    } catch (ClassNotFoundException e) {
+                        e.printStackTrace();
+                    }
+                    if (messageRequest != null) {
+                        handleMessageRequest(messageRequest);
+                    }
+                } while (isSignedIn());
+                rejected = true;
+            } finally {
+                // also when a request broke the session, so the name and the rooms are given back
+                signedOut();
+                if (rejected) {
+                    // a rejected sign in, send the reply before hanging up
+                    this.connection.closeWhenWritten();
+                } else {
+                    // stop the client's writer too
+                    this.connection.close();
                 }
-                if (messageRequest != null) {
-                    handleMessageRequest(messageRequest);
-                }
-            } while (this.chatServer.userExists(this.username));
+            }
+        }
+    }
+
+    /**
+     * @return true while the client is signed in
+     */
+    boolean isSignedIn() {
+        return this.session != null;
+    }
+
+    /**
+     * @param room - the name of a room
+     * @return true if the client is signed in and in the room
+     */
+    private boolean isIn(String room) {
+        Session current = this.session;
+        return current != null && current.isIn(room);
+    }
+
+    /**
+     * The client has gone away, remove them from the server
+     */
+    void signedOut() {
+        Session current = this.session;
+        if (current != null) {
+            OutboundQueue queue = this.connection.getOutboundQueue();
+            this.chatServer.getEvents().log(EventLog.Type.SIGNED_OUT, this.username, this.connection.getRemoteAddress(),
+                    queue.getMaxDepth(), queue.getDropped());
+            this.session = null;
+            this.chatServer.removeUser(current);
         }
     }
 
@@ -92,16 +145,46 @@ public class ServerThread extends Thread {
      *
      * @param messageRequest - the request being sent from the client
      */
-    private void handleMessageRequest(MessageRequest<UserMessage> messageRequest){
+    void handleMessageRequest(MessageRequest<?> messageRequest){
         MessageRequest.RequestType request = messageRequest.getType();
         try{
             switch (request) {
                 case SEND_MESSAGE:
-                    this.chatServer.enterMessageChanges(messageRequest);
+                    // only members can send to a room
+                    UserMessage sent = (UserMessage) messageRequest.getData();
+                    sent.setRoom(Room.canonicalName(sent.getRoom()));
+                    if (isIn(sent.getRoom())) {
+                        this.chatServer.enterMessageChanges(messageRequest);
+                    }
                     break;
                 case LOGIN:
                     login(messageRequest);
                     break;
+                case REQUEST_HISTORY:
+                    HistoryRequest history = (HistoryRequest) messageRequest.getData();
+                    String paged = Room.canonicalName(history.getRoom());
+                    if (isIn(paged)) {
+                        HistoryPage page = this.chatServer.getHistoryBefore(paged, history.getBefore());
+                        if (page != null) {
+                            this.connection.send(new MessageRequest<>(MessageRequest.RequestType.HISTORY_PAGE, page));
+                        }
+                    }
+                    break;
+                case JOIN_ROOM:
+                    Session joining = this.session;
+                    String joined = roomName(messageRequest);
+                    if (joining != null && (joined == null || !this.chatServer.joinRoom(joining, joined))) {
+                        this.chatServer.getEvents().log(EventLog.Type.JOIN_REFUSED, this.username,
+                                this.connection.getRemoteAddress(), joined);
+                    }
+                    break;
+                case LEAVE_ROOM:
+                    Session leaving = this.session;
+                    String left = roomName(messageRequest);
+                    if (leaving != null && left != null) {
+                        this.chatServer.leaveRoom(leaving, left);
+                    }
+                    break;
                 case ERROR:
                     break;
             }
@@ -110,6 +193,16 @@ public class ServerThread extends Thread {
         }
     }
 
+    /**
+     * @param messageRequest - a JOIN_ROOM or LEAVE_ROOM request from the client
+     * @return the name of the room it is for, in lower case, or null if that isn't a valid room name
+     */
+    private static String roomName(MessageRequest<?> messageRequest) {
+        Object data = messageRequest.getData();
+        String name = data instanceof String ? Room.canonicalName((String) data) : null;
+        return Room.isValidName(name) ? name : null;
+    }
+
     /**
      * Allowing the user to sign in
      *
@@ -122,39 +215,36 @@ public class ServerThread extends Thread {
 
         this.username = user.getUsername();
 
-        // if the user doesn't exist and their name is the empty string.
-        if (!this.chatServer.userExists(this.username) && this.username.equals("")) {
+        // a client that signs in again gives up the name they had
+        if (this.session != null) {
+            this.chatServer.removeUser(this.session);
+            this.session = null;
+        }
+
+        // the name is missing altogether, send an error message
+        if (this.username == null) {
+            MessageRequest<?> error = new MessageRequest<>(MessageRequest.RequestType.ERROR, MessageProtocol.ERROR);
+            this.connection.send(error);
+        }
+        // if their name is the empty string.
+        else if (this.username.equals("")) {
+            this.chatServer.getMetrics().invalidUsername();
+            this.chatServer.getEvents().log(EventLog.Type.INVALID_USERNAME, this.username, this.connection.getRemoteAddress());
             MessageRequest<?> unsuccessful_login = new MessageRequest<>(MessageRequest.RequestType.INVALID_USERNAME, MessageProtocol.INVALID_USERNAME);
-            this.out.writeUnshared(unsuccessful_login);
-            this.out.flush();
+            this.connection.send(unsuccessful_login);
         }
         // the user enters a username that is already online
-        else if (this.chatServer.userExists(this.username)) {
+        else if ((this.session = this.chatServer.addUser(this.username, this.connection)) == null) {
+            this.chatServer.getMetrics().userAlreadyExists();
+            this.chatServer.getEvents().log(EventLog.Type.USER_ALREADY_EXISTS, this.username, this.connection.getRemoteAddress());
             MessageRequest<?> unsuccessful_login = new MessageRequest<>(MessageRequest.RequestType.USER_ALREADY_EXISTS, MessageProtocol.USER_ALREADY_EXISTS);
-            this.out.writeUnshared(unsuccessful_login);
-            this.out.flush();
+            this.connection.send(unsuccessful_login);
         }
-        // if user doesn't exist, thus allowing for successful login
-        else if (!this.chatServer.userExists(this.username)) {
-
-            this.chatServer.addUser(this.username, this.out);
-            System.out.println(this.username + " signed in.");
-            MessageRequest<?> login_successful = new MessageRequest<>(MessageRequest.RequestType.LOGIN_SUCCESS, MessageProtocol.LOGIN_SUCCESS);
-            this.out.writeUnshared(login_successful);
-            this.out.flush();
-
-            MessageRequest<String> messages = new MessageRequest<>(MessageRequest.RequestType.CHAT_ROOM, this.chatServer.getChatMessages());
-            this.out.writeUnshared(messages);
-            this.out.flush();
-
-        }
-        // send an error message
+        // the username was free and is now claimed, thus allowing for successful login
         else {
-            MessageRequest<?> error = new MessageRequest<>(MessageRequest.RequestType.ERROR, MessageProtocol.ERROR);
-            out.writeUnshared(error);
-            out.flush();
-            this.chatServer.removeUser(this.username);// remove from the server
-            this.socket.close();
+            this.chatServer.getEvents().log(EventLog.Type.SIGNED_IN, this.username, this.connection.getRemoteAddress());
+            this.chatServer.getMetrics().login();
+            this.chatServer.welcome(this.session, user.getLastSeen());
         }
 
     }
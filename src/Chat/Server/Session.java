@@ -0,0 +1,131 @@
+package Chat.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A signed in user and the connection to their client.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+final class Session {
+
+    /**
+     * The id of the session, unique for the life of the server
+     */
+    private final int id;
+
+    /**
+     * The username of the user
+     */
+    private final String username;
+
+    /**
+     * The connection to the user's client
+     */
+    private final ClientConnection connection;
+
+    /**
+     * The names of the rooms the user is in
+     */
+    private final Set<String> rooms;
+
+    /**
+     * true if the user's client reads history pages, false if it can only
+     * be sent the default room's chat as text
+     */
+    private volatile boolean readsHistory;
+
+    /**
+     * Create the session
+     *
+     * @param id         - the id of the session
+     * @param username   - the username of the user
+     * @param connection - the connection to the user's client
+     */
+    Session(int id, String username, ClientConnection connection) {
+        this.id = id;
+        this.username = username;
+        this.connection = connection;
+        this.rooms = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * @return the username of the user
+     */
+    String getUsername() {
+        return this.username;
+    }
+
+    /**
+     * @return true if the user's client reads history pages
+     */
+    boolean readsHistory() {
+        return this.readsHistory;
+    }
+
+    /**
+     * @param readsHistory - true if the user's client reads history pages
+     */
+    void setReadsHistory(boolean readsHistory) {
+        this.readsHistory = readsHistory;
+    }
+
+    /**
+     * @return the connection to the user's client
+     */
+    ClientConnection getConnection() {
+        return this.connection;
+    }
+
+    /**
+     * @param room - the name of a room
+     * @return true if the user is in the room
+     */
+    boolean isIn(String room) {
+        return this.rooms.contains(room);
+    }
+
+    /**
+     * Record that the user is in a room
+     *
+     * @param room - the name of the room
+     * @return false if they already were
+     */
+    boolean addRoom(String room) {
+        return this.rooms.add(room);
+    }
+
+    /**
+     * @return the number of rooms the user is in
+     */
+    int getRoomCount() {
+        return this.rooms.size();
+    }
+
+    /**
+     * Record that the user has left a room
+     *
+     * @param room - the name of the room
+     * @return false if they weren't in it
+     */
+    boolean removeRoom(String room) {
+        return this.rooms.remove(room);
+    }
+
+    /**
+     * @return a copy of the names of the rooms the user is in
+     */
+    List<String> getRooms() {
+        return new ArrayList<>(this.rooms);
+    }
+
+    @Override
+    public String toString() {
+        return this.username + "#" + this.id;
+    }
+}
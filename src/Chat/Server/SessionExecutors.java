@@ -0,0 +1,52 @@
+package Chat.Server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The ways a ServerThread session can be run.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public final class SessionExecutors {
+
+    /**
+     * Not used, all methods are static
+     */
+    private SessionExecutors() {
+    }
+
+    /**
+     * Run each task on a new platform thread of its own
+     *
+     * @return the executor
+     */
+    public static Executor threadPerTask() {
+        return task -> new Thread(task).start();
+    }
+
+    /**
+     * Run each task on a new virtual thread of its own. A virtual thread that
+     * is blocked reading from an idle socket only holds on to the few kilobytes
+     * of stack it is actually using, rather than a whole platform thread stack.
+     * <p>
+     * Virtual threads need Java 21; on older runtimes this falls back to a
+     * cached pool of platform threads.
+     *
+     * @return the executor
+     */
+    public static ExecutorService virtualThreadPerTask() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Virtual threads are not available on Java "
+                    + System.getProperty("java.version") + ", using platform threads.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package Chat.Server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The users that are signed in to the server, safe to use from every
+ * ServerThread and event loop at once.
+ * <p>
+ * Claiming a username is a single atomic operation, so two clients can
+ * never sign in with the same name.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+class SessionRegistry {
+
+    /**
+     * The sessions, keyed by username
+     */
+    private final ConcurrentHashMap<String, Session> sessions;
+
+    /**
+     * Hands out session ids
+     */
+    private final AtomicInteger nextId;
+
+    /**
+     * Create an empty registry
+     */
+    SessionRegistry() {
+        this.sessions = new ConcurrentHashMap<>();
+        this.nextId = new AtomicInteger();
+    }
+
+    /**
+     * Claim a username for a client, unless someone already has it
+     *
+     * @param username   - the username
+     * @param connection - the connection to the client
+     * @return the new session, or null if the username is taken
+     */
+    Session claim(String username, ClientConnection connection) {
+        Session session = new Session(this.nextId.incrementAndGet(), username, connection);
+        if (this.sessions.putIfAbsent(username, session) != null) {
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Give up a session's username. Does nothing if the username has since
+     * been claimed by another session.
+     *
+     * @param session - the session
+     * @return true if the session was removed
+     */
+    boolean release(Session session) {
+        return this.sessions.remove(session.getUsername(), session);
+    }
+
+    /**
+     * @return the number of signed in users
+     */
+    int size() {
+        return this.sessions.size();
+    }
+
+    /**
+     * @return the signed in users' sessions, as they are while being read
+     */
+    Collection<Session> sessions() {
+        return Collections.unmodifiableCollection(this.sessions.values());
+    }
+}
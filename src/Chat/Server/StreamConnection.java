@@ -0,0 +1,204 @@
+package Chat.Server;
+
+import Chat.Protocol.WriteBatching;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Connection to a client that is served by its own ServerThread. Requests
+ * are queued in an OutboundQueue and written by a writer of the connection's
+ * own, so a client that reads slowly never blocks whoever is broadcasting.
+ * <p>
+ * The writer coalesces the requests queued within a short linger window
+ * into a single flush (see WriteBatching).
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+abstract class StreamConnection implements ClientConnection {
+
+    /**
+     * the socket that connects to the client
+     **/
+    private final Socket socket;
+
+    /**
+     * The client's address, kept so it can still be logged once the socket is closed
+     */
+    private final SocketAddress remoteAddress;
+
+    /**
+     * requests waiting to be written
+     */
+    private final OutboundQueue queue;
+
+    /**
+     * How the writer coalesces requests
+     */
+    private final WriteBatching batching;
+
+    /**
+     * The server's metrics, which count the requests written in each flush
+     * and the time the writer is held up by the client
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * Where the connection reports a client that reads too slowly
+     */
+    final EventLog events;
+
+    /**
+     * true once the connection is closed, or will be after the queued requests are written
+     */
+    private volatile boolean closing;
+
+    /**
+     * Create the connection
+     *
+     * @param socket   - the socket
+     * @param queue    - the queue requests wait in
+     * @param batching - how the writer coalesces requests
+     * @param metrics  - the server's metrics
+     * @param events   - the server's event log
+     */
+    StreamConnection(Socket socket, OutboundQueue queue, WriteBatching batching, ServerMetrics metrics,
+                     EventLog events) {
+        this.socket = socket;
+        this.remoteAddress = socket.getRemoteSocketAddress();
+        this.queue = queue;
+        this.batching = batching;
+        this.metrics = metrics;
+        this.events = events;
+    }
+
+    /**
+     * Start the connection's writer
+     *
+     * @param writers - runs the writer on a thread of its own
+     */
+    void start(Executor writers) {
+        writers.execute(this::drain);
+    }
+
+    /**
+     * Queue a request to be written. If the client has fallen too far
+     * behind, the connection is closed instead.
+     *
+     * @param request - the shared request to be sent
+     */
+    @Override
+    public void send(EncodedRequest request) {
+        send(request, null);
+    }
+
+    /**
+     * Queue one of a room's messages to be written. If the client has fallen
+     * too far behind and can't be resynced, the connection is closed instead.
+     *
+     * @param request - the shared request to be sent
+     * @param resync  - builds the request that brings the client up to date with the room
+     */
+    @Override
+    public void send(EncodedRequest request, Supplier<EncodedRequest> resync) {
+        if (!this.queue.offer(request, resync) && !this.closing) {
+            this.events.log(EventLog.Type.SLOW_CONSUMER, null, this.remoteAddress,
+                    this.queue.getMaxDepth(), this.queue.getDropped());
+            close();
+        }
+    }
+
+    /**
+     * Write queued requests until the connection is closed. The stream is
+     * flushed once the linger window after the first request has passed
+     * with nothing more queued, or the most frames for a flush are written.
+     * The time spent writing, but not lingering, is how long the client
+     * held the writer up.
+     */
+    private void drain() {
+        int maxFrames = this.batching.getMaxFrames();
+        try {
+            EncodedRequest request;
+            while ((request = this.queue.take()) != null) {
+                long deadline = System.nanoTime() + this.batching.getLingerNanos();
+                int frames = 0;
+                long writing = 0;
+                do {
+                    long start = System.nanoTime();
+                    write(request);
+                    writing += System.nanoTime() - start;
+                    frames++;
+                } while (frames < maxFrames && (request = this.queue.poll(deadline)) != null);
+                long start = System.nanoTime();
+                flush();
+                this.metrics.writeStalled(writing + System.nanoTime() - start);
+                this.metrics.getFlushStats().record(frames);
+            }
+        } catch (IOException | InterruptedException e) {
+            close();
+        }
+        // the queue was closed, and anything left in it when it finished has been written
+        close();
+    }
+
+    /**
+     * Write a request to the stream
+     *
+     * @param request - the request
+     * @throws IOException if the request could not be written
+     */
+    abstract void write(EncodedRequest request) throws IOException;
+
+    /**
+     * Flush the stream
+     *
+     * @throws IOException if the stream could not be flushed
+     */
+    abstract void flush() throws IOException;
+
+    /**
+     * @return the queue requests wait in
+     */
+    @Override
+    public OutboundQueue getOutboundQueue() {
+        return this.queue;
+    }
+
+    /**
+     * Close the socket, which also ends the client's ServerThread
+     */
+    @Override
+    public void close() {
+        this.closing = true;
+        this.queue.close();
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Let the writer write what is queued, then close the socket
+     */
+    @Override
+    public void closeWhenWritten() {
+        this.closing = true;
+        this.queue.finish();
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return this.remoteAddress;
+    }
+
+    @Override
+    public String toString() {
+        return this.socket.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package Chat;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Renders message times as HH:mm:ss in a time zone, without creating any
+ * objects for most messages.
+ * <p>
+ * The rendered time of the last second is kept in a reusable char buffer,
+ * so messages sent in the same second are a copy of eight chars. The zone's
+ * offset is looked up with the java.time rules and kept until the zone's
+ * next transition, so other seconds are only a little arithmetic.
+ * <p>
+ * Not thread-safe; each ChatRoom renders with a formatter of its own.
+ *
+ * @author Samuel Tregea
+ * <p>
+ * Last Date Modified: October 18, 2026
+ */
+public final class TimestampFormatter {
+
+    /**
+     * The number of chars in a rendered time
+     */
+    public static final int LENGTH = 8;
+
+    /**
+     * The number of seconds in a day
+     */
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    /**
+     * The rules of the time zone times are rendered in
+     */
+    private final ZoneRules rules;
+
+    /**
+     * The rendered time of cachedSecond
+     */
+    private final char[] buffer;
+
+    /**
+     * The epoch second that is rendered in the buffer
+     */
+    private long cachedSecond;
+
+    /**
+     * The zone's offset from UTC in seconds, from offsetFrom until offsetUntil
+     */
+    private int offset;
+
+    /**
+     * The first epoch second the offset is known to apply to
+     */
+    private long offsetFrom;
+
+    /**
+     * The epoch second the zone next changes its offset at
+     */
+    private long offsetUntil;
+
+    /**
+     * Create a formatter for the system's time zone
+     */
+    public TimestampFormatter() {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * Create a formatter for a time zone
+     *
+     * @param zone - the time zone
+     */
+    public TimestampFormatter(ZoneId zone) {
+        this.rules = zone.getRules();
+        this.buffer = new char[LENGTH];
+        this.cachedSecond = Long.MIN_VALUE;
+        this.offsetFrom = Long.MAX_VALUE;
+        this.offsetUntil = Long.MIN_VALUE;
+    }
+
+    /**
+     * Append a time to a builder
+     *
+     * @param builder - the builder
+     * @param time    - the time, in milliseconds since the epoch
+     * @return the builder
+     */
+    public StringBuilder appendTo(StringBuilder builder, long time) {
+        render(Math.floorDiv(time, 1000L));
+        return builder.append(this.buffer, 0, LENGTH);
+    }
+
+    /**
+     * @param time - the time, in milliseconds since the epoch
+     * @return the time as HH:mm:ss
+     */
+    public String format(long time) {
+        render(Math.floorDiv(time, 1000L));
+        return new String(this.buffer, 0, LENGTH);
+    }
+
+    /**
+     * Render an epoch second into the buffer, unless it is already there
+     *
+     * @param second - the epoch second
+     */
+    private void render(long second) {
+        if (second == this.cachedSecond) {
+            return;
+        }
+        if (second < this.offsetFrom || second >= this.offsetUntil) {
+            lookUpOffset(second);
+        }
+
+        int secondOfDay = (int) Math.floorMod(second + this.offset, (long) SECONDS_PER_DAY);
+        putTwoDigits(0, secondOfDay / 3600);
+        this.buffer[2] = ':';
+        putTwoDigits(3, secondOfDay / 60 % 60);
+        this.buffer[5] = ':';
+        putTwoDigits(6, secondOfDay % 60);
+        this.cachedSecond = second;
+    }
+
+    /**
+     * Find the zone's offset at an epoch second, and how long it lasts
+     *
+     * @param second - the epoch second
+     */
+    private void lookUpOffset(long second) {
+        Instant instant = Instant.ofEpochSecond(second);
+        this.offset = this.rules.getOffset(instant).getTotalSeconds();
+        ZoneOffsetTransition next = this.rules.nextTransition(instant);
+        this.offsetFrom = second;
+        this.offsetUntil = next == null ? Long.MAX_VALUE : next.toEpochSecond();
+    }
+
+    /**
+     * Write a number from 0 to 99 into the buffer as two digits
+     *
+     * @param position - where in the buffer the digits go
+     * @param value    - the number
+     */
+    private void putTwoDigits(int position, int value) {
+        this.buffer[position] = (char) ('0' + value / 10);
+        this.buffer[position + 1] = (char) ('0' + value % 10);
+    }
+}
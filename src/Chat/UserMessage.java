@@ -6,13 +6,22 @@ import java.io.Serializable;
  * This class will create a Chat.UserMessage object that will
  * contain the information of the message itself, the user who
  * sent the message, and the time the message was sent.
+ * <p>
+ * A message is sent to a named room, and once the server has put it in
+ * order it also carries the message's sequence number in that room.
  *
  * @author Samuel Tregea
  * <p>
- * Last Date Modified: January 2, 2019
+ * Last Date Modified: October 18, 2026
  */
 public class UserMessage implements Serializable {
 
+    /**
+     * Kept the same as before the sequence was added, so clients that send
+     * serialized objects can still read and write messages
+     */
+    private static final long serialVersionUID = 3074393535601896170L;
+
     /**
      * The username of the client
      **/
@@ -29,6 +38,16 @@ public class UserMessage implements Serializable {
      **/
     private String message_contents;
 
+    /**
+     * The position of the message in the chat room, -1 until the server has ordered it
+     **/
+    private long sequence = -1;
+
+    /**
+     * The name of the room the message was sent to, null for the default room
+     **/
+    private String room;
+
     /**
      * The Default Constructor
      */
@@ -77,6 +96,42 @@ public class UserMessage implements Serializable {
         return this.message_contents;
     }
 
+    /**
+     * Retrieve the position of the message in the chat room
+     *
+     * @return the sequence number, or -1 if the server has not ordered the message yet
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Set the position of the message in the chat room
+     *
+     * @param sequence - the sequence number
+     */
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Retrieve the room the message was sent to
+     *
+     * @return the name of the room, never null
+     */
+    public String getRoom() {
+        return this.room == null ? ChatRoom.DEFAULT_ROOM : this.room;
+    }
+
+    /**
+     * Set the room the message is sent to
+     *
+     * @param room - the name of the room, null for the default room
+     */
+    public void setRoom(String room) {
+        this.room = room;
+    }
+
     @Override
     public String toString() {
         return getMessage();
@@ -8,15 +8,27 @@ import java.io.Serializable;
  *
  * @author Samuel Tregea
  * <p>
- * Last Date Modified: January 2, 2019
+ * Last Date Modified: October 18, 2026
  */
 public class Users implements Serializable {
 
+    /**
+     * Kept the same as before lastSeen was added, so clients that send
+     * serialized objects can still sign in
+     */
+    private static final long serialVersionUID = -596584809346710332L;
+
     /**
      * The username of the user
      */
     private String username;
 
+    /**
+     * The sequence of the last message the user has seen, -1 if they have
+     * none, or null if they want the whole chat as text when they sign in
+     */
+    private Long lastSeen;
+
     /**
      * Default Constructor
      */
@@ -51,6 +63,25 @@ public class Users implements Serializable {
         this.username = username;
     }
 
+    /**
+     * Retrieve the sequence of the last message the user has seen
+     *
+     * @return the sequence, -1 if they have none, or null if they want the whole chat as text
+     */
+    public Long getLastSeen() {
+        return this.lastSeen;
+    }
+
+    /**
+     * Set the sequence of the last message the user has seen, so only the
+     * messages after it are sent when they sign in
+     *
+     * @param lastSeen - the sequence, -1 if they have none, or null for the whole chat as text
+     */
+    public void setLastSeen(Long lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+
     /**
      * Create a String version of this object
      *